@@ -0,0 +1,225 @@
+/* This file is part of the cvc-webservices.
+ *  Copyright (c) 2018 by the Board of Trustees of the University of Iowa
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you
+ *  may not use this file except in compliance with the License.  You
+ *  may obtain a copy of the License at
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package cvc.benchmarks;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import cvc.Argument;
+import cvc.ArgumentSchema;
+import cvc.CommandTemplate;
+import cvc.Constants;
+import cvc.Util;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The per-request cost of validating the arguments of /run and building the command of the job,
+ * with the compiled {@link ArgumentSchema} and {@link CommandTemplate} against the previous
+ * implementation, which is kept here as the baseline.
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ArgumentValidationBenchmark
+{
+    private static final String COMMAND = "/usr/bin/runlim -o {0}/log.txt --real-time-limit=90 " +
+            "--time-limit=90 --space-limit=50 /usr/local/bin/cvc4 {0}/{1}";
+    private static final String DIRECTORY = "/tmp/jobs/temp_0b7e3f4c-2d1a-4c55-9f1e-6a3d2b8c9e10";
+
+    private HashMap<String, Argument> arguments;
+    private ArgumentSchema schema;
+    private CommandTemplate template;
+
+    // a typical request of the web interface
+    private final Map<String, String> validRequest = new TreeMap<>();
+    // a request rejected because of its integer argument
+    private final Map<String, String> invalidRequest = new TreeMap<>();
+
+    @Setup
+    public void setup() throws Exception
+    {
+        try (InputStream stream = ArgumentValidationBenchmark.class.getResourceAsStream("/cvcArguments.json"))
+        {
+            arguments = new ObjectMapper().readValue(stream, new TypeReference<HashMap<String, Argument>>(){});
+        }
+        schema = new ArgumentSchema(arguments);
+        template = new CommandTemplate(COMMAND);
+
+        validRequest.put("lang", "smtlib2.6");
+        validRequest.put("output-lang", "auto");
+        validRequest.put("tlimit", "5000");
+        validRequest.put("seed", "42");
+        validRequest.put("incremental", "");
+        validRequest.put("produce-models", "");
+        validRequest.put("strings-exp", "");
+
+        invalidRequest.putAll(validRequest);
+        invalidRequest.put("tlimit", "5s");
+    }
+
+    @Benchmark
+    public List<String> compiledValid()
+    {
+        return compiled(validRequest);
+    }
+
+    @Benchmark
+    public List<String> legacyValid()
+    {
+        return legacy(validRequest);
+    }
+
+    @Benchmark
+    public List<String> compiledInvalid()
+    {
+        return compiled(invalidRequest);
+    }
+
+    @Benchmark
+    public List<String> legacyInvalid()
+    {
+        return legacy(invalidRequest);
+    }
+
+    private List<String> compiled(Map<String, String> request)
+    {
+        List<String> args = new ArrayList<>();
+        for (Map.Entry<String, String> pair : request.entrySet())
+        {
+            ArgumentSchema.CompiledArgument argument = schema.get(pair.getKey());
+            if (argument == null || !argument.isValid(pair.getValue()))
+            {
+                return null;
+            }
+            args.add(argument.option);
+            if (!pair.getValue().isEmpty())
+            {
+                args.add(pair.getValue());
+            }
+        }
+
+        List<String> command = template.build(DIRECTORY, args);
+        if (!args.contains(Constants.timeoutArgument))
+        {
+            command.add(Constants.timeoutArgument);
+            command.add("30000");
+        }
+        return command;
+    }
+
+    private List<String> legacy(Map<String, String> request)
+    {
+        List<String> args = new ArrayList<>();
+        for (Map.Entry<String, String> pair : request.entrySet())
+        {
+            if (!legacyIsArgValid(pair.getKey(), pair.getValue()))
+            {
+                return null;
+            }
+            Argument argument = arguments.get(pair.getKey());
+            args.add(argument.prefix + pair.getKey());
+            if (!pair.getValue().isEmpty())
+            {
+                args.add(pair.getValue());
+            }
+        }
+
+        String command = COMMAND.replace("{0}", DIRECTORY).replace("{1}", Constants.CODE_FILE);
+        for (String argument : args)
+        {
+            command += " " + argument;
+        }
+        if (!args.contains(Constants.timeoutArgument))
+        {
+            command += " " + Constants.timeoutArgument + " " + "30000";
+        }
+        return Arrays.asList(command.split(" "));
+    }
+
+    private boolean legacyIsArgValid(String name, String value)
+    {
+        if (!arguments.containsKey(name))
+        {
+            return false;
+        }
+        Argument argument = arguments.get(name);
+        if (argument.type == null)
+        {
+            return true;
+        }
+
+        String type = argument.type;
+        if (type.equals("int"))
+        {
+            try
+            {
+                Integer.parseInt(value);
+            }
+            catch (Exception e)
+            {
+                return false;
+            }
+        }
+        else if (type.equals("boolean"))
+        {
+            String lower = value.toLowerCase();
+            if (!lower.equals("true") && !lower.equals("false"))
+            {
+                return false;
+            }
+        }
+        else if (type.equals("float"))
+        {
+            try
+            {
+                Double.parseDouble(value);
+            }
+            catch (Exception e)
+            {
+                return false;
+            }
+        }
+        else if (type.equals("string"))
+        {
+            return Util.containsIgnoreCase(argument.allowedValues, value);
+        }
+
+        if (type.equals("int") || type.equals("float"))
+        {
+            float val = Float.parseFloat(value);
+            return !(val < argument.min || val > argument.max);
+        }
+        return true;
+    }
+}
@@ -0,0 +1,125 @@
+/* This file is part of the cvc-webservices.
+ *  Copyright (c) 2018 by the Board of Trustees of the University of Iowa
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you
+ *  may not use this file except in compliance with the License.  You
+ *  may obtain a copy of the License at
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package cvc.benchmarks;
+
+import cvc.Constants;
+import cvc.Contracts.RawResults;
+import cvc.CvcClient;
+import cvc.CvcContext;
+import cvc.FileJobStore;
+import cvc.JobStore;
+import cvc.MemoryJobStore;
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The cost of /getRawResults for a finished job: reading both outputs, concatenating them
+ * and removing the path of the job directory, from the file store and from the memory store.
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RawResultsBenchmark
+{
+    private static final String JOB_ID = "temp_benchmark";
+
+    // 1 KB to 50 MB
+    @Param({"1024", "65536", "1048576", "52428800"})
+    public int size;
+
+    @Param({"file", "memory"})
+    public String store;
+
+    private File directory;
+    private JobStore jobStore;
+
+    @Setup
+    public void setup() throws Exception
+    {
+        directory = Files.createTempDirectory("cvc-benchmark").toFile();
+        CvcContext.jobsDirectory = directory.getAbsolutePath();
+
+        // no retention budgets, so the job is never deleted while it is read
+        FileJobStore fileJobStore = new FileJobStore(CvcContext.jobsDirectory, 0, 0);
+        jobStore = store.equals("memory") ?
+                new MemoryJobStore(fileJobStore, 4L * size + (1 << 20), 2L * size + (1 << 20)) : fileJobStore;
+        CvcContext.setJobStore(jobStore);
+
+        jobStore.create(JOB_ID, "(check-sat)");
+        try (OutputStream results = jobStore.openOutput(JOB_ID, Constants.RESULTS_FILE))
+        {
+            results.write(output(size));
+        }
+        try (OutputStream errors = jobStore.openOutput(JOB_ID, Constants.ERRORS_FILE))
+        {
+            errors.write(output(256));
+        }
+    }
+
+    /**
+     * @return output of the given size where some lines contain the path of the job
+     */
+    private byte[] output(int length)
+    {
+        String path = new File(directory, JOB_ID).getAbsolutePath();
+        StringBuilder builder = new StringBuilder(length + 128);
+        int line = 0;
+        while (builder.length() < length)
+        {
+            if (line++ % 16 == 0)
+            {
+                builder.append("(error \"").append(path).append("/code.txt:").append(line).append(": parse error\")\n");
+            }
+            else
+            {
+                builder.append("(define-fun x").append(line).append(" () Int ").append(line).append(")\n");
+            }
+        }
+        builder.setLength(length);
+        return builder.toString().getBytes(Charset.defaultCharset());
+    }
+
+    @TearDown
+    public void tearDown()
+    {
+        jobStore.shutdown();
+        FileUtils.deleteQuietly(directory);
+    }
+
+    @Benchmark
+    public RawResults getRawResults() throws Exception
+    {
+        return CvcClient.getRawResults(JOB_ID);
+    }
+}
@@ -0,0 +1,106 @@
+/* This file is part of the cvc-webservices.
+ *  Copyright (c) 2018 by the Board of Trustees of the University of Iowa
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you
+ *  may not use this file except in compliance with the License.  You
+ *  may obtain a copy of the License at
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package cvc.benchmarks;
+
+import cvc.JobFeatures;
+import cvc.JobScheduler;
+import cvc.JobTask;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The overhead of running a job on the executor, from submitting it to its completion,
+ * with a task that writes a solver answer in place of the cvc process.
+ * The job scheduler is compared with submitting to the executor service directly.
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SchedulerBenchmark
+{
+    private static final byte[] ANSWER = "sat\n".getBytes(Charset.defaultCharset());
+
+    @Param({JobScheduler.FAIR_POLICY, JobScheduler.COST_POLICY})
+    public String policy;
+
+    private ExecutorService executorService;
+    private JobScheduler scheduler;
+    private JobFeatures features;
+    private long jobs;
+
+    @Setup
+    public void setup()
+    {
+        executorService = Executors.newFixedThreadPool(4);
+        scheduler = new JobScheduler(executorService, 4, 200, 4, 50, 1000, policy, 1);
+
+        Map<String, String> arguments = new HashMap<>();
+        arguments.put("lang", "smtlib2.6");
+        features = JobFeatures.of("(set-logic QF_LIA)\n(check-sat)\n", arguments);
+    }
+
+    @TearDown
+    public void tearDown()
+    {
+        executorService.shutdownNow();
+    }
+
+    private static Void run()
+    {
+        ByteArrayOutputStream results = new ByteArrayOutputStream();
+        results.write(ANSWER, 0, ANSWER.length);
+        return null;
+    }
+
+    private static void start(JobTask task)
+    {
+        run();
+        task.complete();
+    }
+
+    @Benchmark
+    public Void scheduler() throws Exception
+    {
+        JobTask task = new JobTask("temp_" + jobs, SchedulerBenchmark::start);
+        scheduler.submit("temp_" + jobs++, "client", features, task);
+        return task.get();
+    }
+
+    @Benchmark
+    public Void executorService() throws Exception
+    {
+        return executorService.submit(SchedulerBenchmark::run).get();
+    }
+}
@@ -0,0 +1,180 @@
+/* This file is part of the cvc-webservices.
+ *  Copyright (c) 2018 by the Board of Trustees of the University of Iowa
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you
+ *  may not use this file except in compliance with the License.  You
+ *  may obtain a copy of the License at
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package cvc.benchmarks;
+
+import com.fasterxml.jackson.databind.AnnotationIntrospector;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.introspect.JacksonAnnotationIntrospector;
+import com.fasterxml.jackson.module.jaxb.JaxbAnnotationIntrospector;
+import cvc.Contracts.Examples;
+import cvc.Contracts.Input;
+import cvc.Contracts.Kind;
+import cvc.Contracts.RawResults;
+import org.apache.commons.io.IOUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.xml.bind.JAXBContext;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The cost of writing the bodies of /getRawResults, /examples and /getJob as JSON, the way
+ * the Jackson provider of Jersey does, and as XML with JAXB.
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+// the JAXB implementation needs java.lang to be open on Java 9 and later
+@Fork(value = 1, jvmArgsAppend = {"-XX:+IgnoreUnrecognizedVMOptions", "--add-opens=java.base/java.lang=ALL-UNNAMED"})
+public class SerializationBenchmark
+{
+    @State(Scope.Benchmark)
+    public static class Results
+    {
+        // the size of the output in the results
+        @Param({"1024", "1048576"})
+        public int size;
+
+        private RawResults rawResults;
+
+        @Setup
+        public void setup()
+        {
+            StringBuilder builder = new StringBuilder(size + 64);
+            for (int line = 0; builder.length() < size; line++)
+            {
+                builder.append("(define-fun x").append(line).append(" () Int ").append(line).append(")\n");
+            }
+            builder.setLength(size);
+
+            rawResults = new RawResults();
+            rawResults.jobId = "temp_0b7e3f4c-2d1a-4c55-9f1e-6a3d2b8c9e10";
+            rawResults.data = builder.toString();
+            rawResults.jobFinished = true;
+        }
+    }
+
+    private final ObjectMapper mapper = new ObjectMapper().setAnnotationIntrospector(
+            AnnotationIntrospector.pair(new JacksonAnnotationIntrospector(),
+                    new JaxbAnnotationIntrospector(new ObjectMapper().getTypeFactory())));
+
+    private JAXBContext rawResultsContext;
+    private JAXBContext examplesContext;
+    private JAXBContext inputContext;
+
+    private Examples examples;
+    private Input input;
+
+    private final ByteArrayOutputStream stream = new ByteArrayOutputStream();
+
+    @Setup
+    public void setup() throws Exception
+    {
+        rawResultsContext = JAXBContext.newInstance(RawResults.class);
+        examplesContext = JAXBContext.newInstance(Examples.class);
+        inputContext = JAXBContext.newInstance(Input.class);
+
+        // about the size of the bundled examples
+        String[] kinds = {"cvc", "smt-lib", "sygus", "tptp"};
+        examples = new Examples();
+        examples.kinds = new Kind[kinds.length];
+        for (int i = 0; i < kinds.length; i++)
+        {
+            examples.kinds[i] = new Kind();
+            examples.kinds[i].name = kinds[i];
+            examples.kinds[i].names = new String[20];
+            for (int j = 0; j < 20; j++)
+            {
+                examples.kinds[i].names[j] = kinds[i] + "-example-" + j;
+            }
+        }
+
+        input = new Input();
+        try (InputStream code = SerializationBenchmark.class.getResourceAsStream(
+                "/examples/smt-lib/arith/arith.txt"))
+        {
+            input.code = IOUtils.toString(code, Charset.defaultCharset());
+        }
+        input.arguments = new TreeMap<>();
+        input.arguments.put("lang", "smtlib2.6");
+        input.arguments.put("produce-models", "");
+        input.arguments.put("tlimit", "5000");
+    }
+
+    @Benchmark
+    public int jacksonRawResults(Results results) throws Exception
+    {
+        return json(results.rawResults);
+    }
+
+    @Benchmark
+    public int jaxbRawResults(Results results) throws Exception
+    {
+        return xml(rawResultsContext, results.rawResults);
+    }
+
+    @Benchmark
+    public int jacksonExamples() throws Exception
+    {
+        return json(examples);
+    }
+
+    @Benchmark
+    public int jaxbExamples() throws Exception
+    {
+        return xml(examplesContext, examples);
+    }
+
+    @Benchmark
+    public int jacksonInput() throws Exception
+    {
+        return json(input);
+    }
+
+    @Benchmark
+    public int jaxbInput() throws Exception
+    {
+        return xml(inputContext, input);
+    }
+
+    private int json(Object entity) throws Exception
+    {
+        stream.reset();
+        mapper.writeValue(stream, entity);
+        return stream.size();
+    }
+
+    private int xml(JAXBContext context, Object entity) throws Exception
+    {
+        stream.reset();
+        // Jersey creates a marshaller for every response
+        context.createMarshaller().marshal(entity, stream);
+        return stream.size();
+    }
+}
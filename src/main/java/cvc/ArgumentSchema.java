@@ -0,0 +1,153 @@
+/* This file is part of the cvc-webservices.
+ *  Copyright (c) 2018 by the Board of Trustees of the University of Iowa
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you
+ *  may not use this file except in compliance with the License.  You
+ *  may obtain a copy of the License at
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package cvc;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The arguments of cvcArguments.json compiled once at startup, so that validating the
+ * arguments of a request is a hash map lookup and a check of the value against its type.
+ */
+
+public class ArgumentSchema
+{
+    public enum Type
+    {
+        // a flag, or an argument of an unknown type, accepts any value
+        FLAG,
+        INT,
+        BOOLEAN,
+        FLOAT,
+        STRING;
+
+        static Type of(String type)
+        {
+            if (type == null)
+            {
+                return FLAG;
+            }
+            switch (type)
+            {
+                case "int":
+                    return INT;
+                case "boolean":
+                    return BOOLEAN;
+                case "float":
+                    return FLOAT;
+                case "string":
+                    return STRING;
+                default:
+                    return FLAG;
+            }
+        }
+    }
+
+    /**
+     * An argument with its option and the constraints on its value
+     */
+    public static class CompiledArgument
+    {
+        public final String name;
+        public final Type type;
+        // the option passed to cvc, i.e. the prefix followed by the name
+        public final String option;
+
+        private final long intMin;
+        private final long intMax;
+        private final double floatMin;
+        private final double floatMax;
+        // lower case
+        private final Set<String> allowedValues;
+
+        CompiledArgument(String name, Argument argument)
+        {
+            this.name = name;
+            this.type = Type.of(argument.type);
+            this.option = argument.prefix + name;
+            this.intMin = (long) Math.ceil(argument.min);
+            this.intMax = (long) Math.floor(argument.max);
+            this.floatMin = argument.min;
+            this.floatMax = argument.max;
+
+            Set<String> values = new HashSet<>();
+            if (argument.allowedValues != null)
+            {
+                for (String value : argument.allowedValues)
+                {
+                    values.add(value.toLowerCase(Locale.ROOT));
+                }
+            }
+            this.allowedValues = values;
+        }
+
+        public boolean isValid(String value)
+        {
+            switch (type)
+            {
+                case FLAG:
+                    return true;
+                case INT:
+                    return Validator.isValidPosInteger(value) && isInRange(Long.parseLong(value));
+                case BOOLEAN:
+                    return value != null && Validator.isValidBoolean(value);
+                case FLOAT:
+                    return Validator.isValidDouble(value) && isInRange(Double.parseDouble(value));
+                case STRING:
+                    return value != null && allowedValues.contains(value.toLowerCase(Locale.ROOT));
+                default:
+                    return false;
+            }
+        }
+
+        private boolean isInRange(long value)
+        {
+            return value >= intMin && value <= intMax;
+        }
+
+        private boolean isInRange(double value)
+        {
+            return value >= floatMin && value <= floatMax;
+        }
+    }
+
+    private final Map<String, CompiledArgument> arguments;
+
+    public ArgumentSchema(Map<String, Argument> arguments)
+    {
+        Map<String, CompiledArgument> compiled = new HashMap<>();
+        for (Map.Entry<String, Argument> entry : arguments.entrySet())
+        {
+            compiled.put(entry.getKey(), new CompiledArgument(entry.getKey(), entry.getValue()));
+        }
+        this.arguments = Collections.unmodifiableMap(compiled);
+    }
+
+    /**
+     * @return the argument with the given name, or null if there is no such argument
+     */
+    public CompiledArgument get(String name)
+    {
+        return arguments.get(name);
+    }
+
+    public boolean isValid(String name, String value)
+    {
+        CompiledArgument argument = arguments.get(name);
+        return argument != null && argument.isValid(value);
+    }
+}
@@ -0,0 +1,54 @@
+/* This file is part of the cvc-webservices.
+ *  Copyright (c) 2018 by the Board of Trustees of the University of Iowa
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you
+ *  may not use this file except in compliance with the License.  You
+ *  may obtain a copy of the License at
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package cvc;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A command from configurations.json split into its tokens once, where {0} stands for the
+ * directory of the job and {1} for the name of the code file.
+ */
+
+public class CommandTemplate
+{
+    private final String[] tokens;
+    private final boolean[] placeholders;
+
+    public CommandTemplate(String command)
+    {
+        tokens = command.split(" ");
+        placeholders = new boolean[tokens.length];
+        for (int i = 0; i < tokens.length; i++)
+        {
+            placeholders[i] = tokens[i].contains("{0}") || tokens[i].contains("{1}");
+        }
+    }
+
+    /**
+     * @param directory the directory of the job
+     * @param args      the cvc arguments of the job
+     * @return the arguments of the process that runs the job
+     */
+    public List<String> build(String directory, List<String> args)
+    {
+        List<String> command = new ArrayList<>(tokens.length + args.size() + 2);
+        for (int i = 0; i < tokens.length; i++)
+        {
+            command.add(placeholders[i] ?
+                    tokens[i].replace("{0}", directory).replace("{1}", Constants.CODE_FILE) : tokens[i]);
+        }
+        command.addAll(args);
+        return command;
+    }
+}
@@ -23,7 +23,10 @@ public class Constants
     public static final String CODE_FILE = "code.txt";
     public static final String RESULTS_FILE = "results.txt";
     public static final String tempPrefix = "temp_";
+    public static final String SCRATCH_DIR = "cvc-scratch";
     public static final String examplesDir = "examples";
     public static final String ERRORS_FILE = "errors.txt" ;
+    public static final String LOG_FILE = "log.txt"; // written by runlim
     public static final String timeoutArgument = "--tlimit";
+    public static final String API_KEY_HEADER = "X-Api-Key";
 }
@@ -0,0 +1,40 @@
+/* This file is part of the cvc-webservices.
+ *  Copyright (c) 2018 by the Board of Trustees of the University of Iowa
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you
+ *  may not use this file except in compliance with the License.  You
+ *  may obtain a copy of the License at
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package cvc.Contracts;
+
+import javax.xml.bind.annotation.XmlAttribute;
+import javax.xml.bind.annotation.XmlRootElement;
+
+@XmlRootElement(name = "BatchStatus")
+public class BatchStatus
+{
+    @XmlAttribute(name = "batchId")
+    public String batchId;
+
+    @XmlAttribute(name = "total")
+    public int total;
+
+    // jobs waiting in the batch or in the job queue
+    @XmlAttribute(name = "queued")
+    public int queued;
+
+    @XmlAttribute(name = "running")
+    public int running;
+
+    // jobs that finished, were cancelled or were answered from the cache
+    @XmlAttribute(name = "finished")
+    public int finished;
+
+    @XmlAttribute(name = "batchFinished")
+    public boolean batchFinished;
+}
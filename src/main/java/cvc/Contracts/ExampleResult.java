@@ -0,0 +1,42 @@
+/* This file is part of the cvc-webservices.
+ *  Copyright (c) 2018 by the Board of Trustees of the University of Iowa
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you
+ *  may not use this file except in compliance with the License.  You
+ *  may obtain a copy of the License at
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package cvc.Contracts;
+
+import javax.xml.bind.annotation.XmlAttribute;
+import javax.xml.bind.annotation.XmlRootElement;
+
+@XmlRootElement(name = "ExampleResult")
+public class ExampleResult
+{
+    @XmlAttribute(name = "kind")
+    public String kind;
+
+    @XmlAttribute(name = "name")
+    public String name;
+
+    // sat, unsat, unknown, the SZS status of TPTP problems, error or none
+    @XmlAttribute(name = "answer")
+    public String answer;
+
+    // milliseconds from the start of the job until it finished
+    @XmlAttribute(name = "wallTime")
+    public long wallTime;
+
+    // megabytes, as measured by runlim
+    @XmlAttribute(name = "peakMemory")
+    public Double peakMemory;
+
+    // the status reported by runlim, e.g. ok or out of time
+    @XmlAttribute(name = "status")
+    public String status;
+}
@@ -0,0 +1,47 @@
+/* This file is part of the cvc-webservices.
+ *  Copyright (c) 2018 by the Board of Trustees of the University of Iowa
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you
+ *  may not use this file except in compliance with the License.  You
+ *  may obtain a copy of the License at
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package cvc.Contracts;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import javax.xml.bind.annotation.XmlAttribute;
+import javax.xml.bind.annotation.XmlElement;
+import javax.xml.bind.annotation.XmlRootElement;
+
+@XmlRootElement(name = "ExamplesReport")
+public class ExamplesReport
+{
+    // milliseconds since the epoch
+    @XmlAttribute(name = "started")
+    public long started;
+
+    // the number of examples run at the same time
+    @XmlAttribute(name = "concurrency")
+    public int concurrency;
+
+    // milliseconds to run all the examples
+    @XmlAttribute(name = "wallTime")
+    public long wallTime;
+
+    @XmlAttribute(name = "filter")
+    public String filter;
+
+    @XmlElement(name = "Example")
+    @JsonProperty("examples")
+    public ExampleResult[] examples;
+
+    // the differences from the baseline, empty if there is no baseline
+    @XmlElement(name = "Regression")
+    @JsonProperty("regressions")
+    public Regression[] regressions;
+}
@@ -21,4 +21,15 @@ public class Input extends Job
 {
     @XmlElement(name="arguments")
     public Map<String, String> arguments;
+
+    // set to false to run the solver even if the results of an identical job are cached
+    @XmlElement(name="useCache")
+    public boolean useCache = true;
+
+    /*
+     set to run the job with each configuration in parallel; the first one that
+     answers sat or unsat wins and the others are stopped
+    */
+    @XmlElement(name="portfolio")
+    public Configuration[] portfolio;
 }
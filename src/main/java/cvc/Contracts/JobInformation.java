@@ -20,4 +20,12 @@ public class JobInformation
 {
     @XmlAttribute(name = "jobId")
     public String jobId;
+
+    // the position of a submitted job in the queue, where 0 means the job started right away
+    @XmlAttribute(name = "queuePosition")
+    public Integer queuePosition;
+
+    // the expected start time of a submitted job in milliseconds since the epoch
+    @XmlAttribute(name = "estimatedStartTime")
+    public Long estimatedStartTime;
 }
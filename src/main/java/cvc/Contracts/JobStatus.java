@@ -0,0 +1,55 @@
+/* This file is part of the cvc-webservices.
+ *  Copyright (c) 2018 by the Board of Trustees of the University of Iowa
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you
+ *  may not use this file except in compliance with the License.  You
+ *  may obtain a copy of the License at
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package cvc.Contracts;
+
+import javax.xml.bind.annotation.XmlAttribute;
+import javax.xml.bind.annotation.XmlRootElement;
+
+@XmlRootElement(name = "JobStatus")
+public class JobStatus
+{
+    @XmlAttribute(name = "jobId")
+    public String jobId;
+
+    // QUEUED, RUNNING, COMPLETED, TIMED_OUT, CANCELLED or FAILED
+    @XmlAttribute(name = "state")
+    public String state;
+
+    @XmlAttribute(name = "jobFinished")
+    public boolean jobFinished;
+
+    // the times of the transitions, in milliseconds since the epoch
+    @XmlAttribute(name = "queued")
+    public long queued;
+
+    @XmlAttribute(name = "started")
+    public Long started;
+
+    @XmlAttribute(name = "finished")
+    public Long finished;
+
+    // the exit code of the process, if the job ran in a process that exited
+    @XmlAttribute(name = "exitCode")
+    public Integer exitCode;
+
+    // the position in the job queue while the job waits for a slot
+    @XmlAttribute(name = "queuePosition")
+    public Integer queuePosition;
+
+    // the bytes of output written so far, to be compared with the offsets of getRawResults
+    @XmlAttribute(name = "stdoutLength")
+    public long stdoutLength;
+
+    @XmlAttribute(name = "stderrLength")
+    public long stderrLength;
+}
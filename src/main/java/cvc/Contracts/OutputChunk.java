@@ -0,0 +1,46 @@
+/* This file is part of the cvc-webservices.
+ *  Copyright (c) 2018 by the Board of Trustees of the University of Iowa
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you
+ *  may not use this file except in compliance with the License.  You
+ *  may obtain a copy of the License at
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package cvc.Contracts;
+
+import javax.xml.bind.annotation.XmlAttribute;
+import javax.xml.bind.annotation.XmlElement;
+import javax.xml.bind.annotation.XmlRootElement;
+
+/**
+ * A piece of the output of a job sent while streaming the results
+ */
+@XmlRootElement(name = "OutputChunk")
+public class OutputChunk
+{
+    @XmlAttribute(name = "jobId")
+    public String jobId;
+
+    // stdout or stderr
+    @XmlAttribute(name = "stream")
+    public String stream;
+
+    // the byte offset of data within the stream
+    @XmlAttribute(name = "offset")
+    public long offset;
+
+    // the offset a reconnecting client should resume this stream from
+    @XmlAttribute(name = "nextOffset")
+    public long nextOffset;
+
+    @XmlElement(name = "data")
+    public String data;
+
+    // true for the last message of the stream
+    @XmlAttribute
+    public boolean jobFinished;
+}
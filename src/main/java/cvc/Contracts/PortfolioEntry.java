@@ -0,0 +1,36 @@
+/* This file is part of the cvc-webservices.
+ *  Copyright (c) 2018 by the Board of Trustees of the University of Iowa
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you
+ *  may not use this file except in compliance with the License.  You
+ *  may obtain a copy of the License at
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package cvc.Contracts;
+
+import javax.xml.bind.annotation.XmlAttribute;
+import javax.xml.bind.annotation.XmlRootElement;
+
+@XmlRootElement(name = "PortfolioEntry")
+public class PortfolioEntry
+{
+    // the index of the configuration in the portfolio of the input
+    @XmlAttribute(name = "index")
+    public int index;
+
+    @XmlAttribute(name = "jobId")
+    public String jobId;
+
+    // the answer of the configuration once it finished, e.g. sat, or cancelled if it was stopped
+    @XmlAttribute(name = "result")
+    public String result;
+
+    // milliseconds from when the configuration started until it finished or was stopped, 0 if it
+    // was answered from the cache, or null if it was cancelled before it started
+    @XmlAttribute(name = "runtime")
+    public Long runtime;
+}
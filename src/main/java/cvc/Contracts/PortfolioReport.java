@@ -0,0 +1,37 @@
+/* This file is part of the cvc-webservices.
+ *  Copyright (c) 2018 by the Board of Trustees of the University of Iowa
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you
+ *  may not use this file except in compliance with the License.  You
+ *  may obtain a copy of the License at
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package cvc.Contracts;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import javax.xml.bind.annotation.XmlAttribute;
+import javax.xml.bind.annotation.XmlElement;
+import javax.xml.bind.annotation.XmlRootElement;
+
+@XmlRootElement(name = "PortfolioReport")
+public class PortfolioReport
+{
+    @XmlAttribute(name = "jobId")
+    public String jobId;
+
+    // the index of the configuration whose results are the results of the job
+    @XmlAttribute(name = "winner")
+    public Integer winner;
+
+    @XmlAttribute(name = "jobFinished")
+    public boolean jobFinished;
+
+    @XmlElement(name = "Configuration")
+    @JsonProperty("configurations")
+    public PortfolioEntry[] configurations;
+}
@@ -0,0 +1,53 @@
+/* This file is part of the cvc-webservices.
+ *  Copyright (c) 2018 by the Board of Trustees of the University of Iowa
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you
+ *  may not use this file except in compliance with the License.  You
+ *  may obtain a copy of the License at
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package cvc.Contracts;
+
+import javax.xml.bind.annotation.XmlAttribute;
+import javax.xml.bind.annotation.XmlRootElement;
+
+@XmlRootElement(name = "QueueStatistics")
+public class QueueStatistics
+{
+    // jobs waiting for a slot
+    @XmlAttribute(name = "queued")
+    public int queued;
+
+    @XmlAttribute(name = "running")
+    public int running;
+
+    // clients with queued or running jobs
+    @XmlAttribute(name = "clients")
+    public int clients;
+
+    @XmlAttribute(name = "slots")
+    public int slots;
+
+    @XmlAttribute(name = "capacity")
+    public int capacity;
+
+    // jobs rejected because the queue was full
+    @XmlAttribute(name = "rejected")
+    public long rejected;
+
+    // milliseconds
+    @XmlAttribute(name = "averageWait")
+    public long averageWait;
+
+    // milliseconds
+    @XmlAttribute(name = "averageRuntime")
+    public long averageRuntime;
+
+    // milliseconds the job at the head of the queue has been waiting
+    @XmlAttribute(name = "oldestWait")
+    public long oldestWait;
+}
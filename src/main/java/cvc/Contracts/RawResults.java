@@ -31,4 +31,25 @@ public class RawResults
     */
     @XmlAttribute
     public boolean jobFinished;
+
+    /*
+     set instead of data when the output is requested from offsets:
+     the output of each stream written since its offset
+    */
+    @XmlElement(name = "stdout")
+    public String stdout;
+
+    @XmlElement(name = "stderr")
+    public String stderr;
+
+    // the offsets to request the output that follows
+    @XmlAttribute
+    public Long stdoutOffset;
+
+    @XmlAttribute
+    public Long stderrOffset;
+
+    // the resources used by the finished job as reported by runlim, or null
+    @XmlElement(name = "usage")
+    public Usage usage;
 }
@@ -0,0 +1,51 @@
+/* This file is part of the cvc-webservices.
+ *  Copyright (c) 2018 by the Board of Trustees of the University of Iowa
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you
+ *  may not use this file except in compliance with the License.  You
+ *  may obtain a copy of the License at
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package cvc.Contracts;
+
+import javax.xml.bind.annotation.XmlAttribute;
+import javax.xml.bind.annotation.XmlRootElement;
+
+/**
+ * Compares runtime predictions and latencies over the recently finished jobs.
+ * All durations are in milliseconds.
+ */
+@XmlRootElement(name = "SchedulingReport")
+public class SchedulingReport
+{
+    // fair or cost
+    @XmlAttribute(name = "policy")
+    public String policy;
+
+    @XmlAttribute(name = "aging")
+    public double aging;
+
+    // the number of recent jobs in the report
+    @XmlAttribute(name = "samples")
+    public int samples;
+
+    // mean difference between the predicted and the actual runtime
+    @XmlAttribute(name = "meanAbsoluteError")
+    public long meanAbsoluteError;
+
+    // mean queue wait plus runtime as measured
+    @XmlAttribute(name = "meanLatency")
+    public long meanLatency;
+
+    // mean latency of the same jobs replayed in arrival order
+    @XmlAttribute(name = "simulatedFifoLatency")
+    public long simulatedFifoLatency;
+
+    // mean latency of the same jobs replayed in cost-aware order
+    @XmlAttribute(name = "simulatedCostAwareLatency")
+    public long simulatedCostAwareLatency;
+}
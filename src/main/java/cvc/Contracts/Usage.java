@@ -0,0 +1,44 @@
+/* This file is part of the cvc-webservices.
+ *  Copyright (c) 2018 by the Board of Trustees of the University of Iowa
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you
+ *  may not use this file except in compliance with the License.  You
+ *  may obtain a copy of the License at
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package cvc.Contracts;
+
+import javax.xml.bind.annotation.XmlAttribute;
+import javax.xml.bind.annotation.XmlRootElement;
+
+@XmlRootElement(name = "Usage")
+public class Usage
+{
+    public static final String TIME_LIMIT = "time";
+    public static final String REAL_TIME_LIMIT = "real time";
+    public static final String SPACE_LIMIT = "space";
+
+    // the status reported by runlim, e.g. ok, out of time or out of memory
+    @XmlAttribute(name = "status")
+    public String status;
+
+    // seconds
+    @XmlAttribute(name = "realTime")
+    public Double realTime;
+
+    // seconds
+    @XmlAttribute(name = "cpuTime")
+    public Double cpuTime;
+
+    // megabytes
+    @XmlAttribute(name = "maxMemory")
+    public Double maxMemory;
+
+    // the limit that stopped the job: time, real time or space, or null if none did
+    @XmlAttribute(name = "limit")
+    public String limit;
+}
@@ -0,0 +1,61 @@
+/* This file is part of the cvc-webservices.
+ *  Copyright (c) 2018 by the Board of Trustees of the University of Iowa
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you
+ *  may not use this file except in compliance with the License.  You
+ *  may obtain a copy of the License at
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package cvc.Contracts;
+
+import javax.xml.bind.annotation.XmlAttribute;
+import javax.xml.bind.annotation.XmlRootElement;
+
+@XmlRootElement(name = "UsageAggregate")
+public class UsageAggregate
+{
+    // the input language or the example kind
+    @XmlAttribute(name = "name")
+    public String name;
+
+    @XmlAttribute(name = "jobs")
+    public long jobs;
+
+    // seconds
+    @XmlAttribute(name = "averageRealTime")
+    public double averageRealTime;
+
+    // seconds
+    @XmlAttribute(name = "maxRealTime")
+    public double maxRealTime;
+
+    // seconds
+    @XmlAttribute(name = "averageCpuTime")
+    public double averageCpuTime;
+
+    // seconds
+    @XmlAttribute(name = "maxCpuTime")
+    public double maxCpuTime;
+
+    // megabytes
+    @XmlAttribute(name = "averageMemory")
+    public double averageMemory;
+
+    // megabytes
+    @XmlAttribute(name = "maxMemory")
+    public double maxMemory;
+
+    // jobs stopped by each limit
+    @XmlAttribute(name = "timeLimitHits")
+    public long timeLimitHits;
+
+    @XmlAttribute(name = "realTimeLimitHits")
+    public long realTimeLimitHits;
+
+    @XmlAttribute(name = "spaceLimitHits")
+    public long spaceLimitHits;
+}
@@ -0,0 +1,31 @@
+/* This file is part of the cvc-webservices.
+ *  Copyright (c) 2018 by the Board of Trustees of the University of Iowa
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you
+ *  may not use this file except in compliance with the License.  You
+ *  may obtain a copy of the License at
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package cvc.Contracts;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import javax.xml.bind.annotation.XmlElement;
+import javax.xml.bind.annotation.XmlRootElement;
+
+@XmlRootElement(name = "UsageReport")
+public class UsageReport
+{
+    @XmlElement(name = "Language")
+    @JsonProperty("languages")
+    public UsageAggregate[] languages;
+
+    // the languages grouped like the kinds of the examples: cvc, smt-lib, sygus and tptp
+    @XmlElement(name = "Kind")
+    @JsonProperty("kinds")
+    public UsageAggregate[] kinds;
+}
@@ -13,17 +13,19 @@
 package cvc;
 
 import cvc.Contracts.RawResults;
+import cvc.Contracts.Usage;
+import org.apache.commons.io.FileUtils;
 import org.apache.log4j.Logger;
 
 import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
-import java.io.RandomAccessFile;
+import java.io.OutputStream;
 import java.nio.charset.Charset;
 import java.nio.file.Files;
-import java.nio.file.Paths;
-import java.util.Formatter;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 
@@ -35,143 +37,617 @@ public class CvcClient
 {
     private static final Logger log = Logger.getLogger(cvc.CvcClient.class);
 
+    public static final String SAT = "sat";
+    public static final String UNSAT = "unsat";
+    public static final String UNKNOWN = "unknown";
+    public static final String ERROR = "error";
+    public static final String NONE = "none";
+
+    // the line of a TPTP answer, e.g. "% SZS status Theorem for problem"
+    private static final String SZS_STATUS = "% SZS status ";
+
+    // the maximum number of bytes of one stream returned by a request from an offset
+    private static final int DELTA_SIZE = 1024 * 1024;
+
     public CvcClient()
     {
         Logger.getLogger("org.apache.http").setLevel(org.apache.log4j.Level.OFF);
     }
 
 
+    /**
+     * Cancels a job. A job that never started is finished as CANCELLED right away, while a
+     * running job finishes as CANCELLED once its process was killed and its outputs drained.
+     */
     public static void cancelJob(String jobId)
     {
-        if (CvcContext.runningTasks.containsKey(jobId))
+        Future<Void> future = CvcContext.runningTasks.get(jobId);
+        if (future == null)
+        {
+            return;
+        }
+        CvcContext.getJobScheduler().remove(jobId);
+        if (!future.cancel(true))
+        {
+            // finished or cancelled before
+            return;
+        }
+        Metrics.jobsCancelled.increment();
+        System.out.println("Job id " + jobId + " is canceled");
+
+        // a portfolio job has no process of its own, and its configurations are cancelled with it
+        if (!(future instanceof JobTask) || ((JobTask) future).preventStart())
         {
-            Future<Void> future = CvcContext.runningTasks.get(jobId);
-            future.cancel(true);
+            // a job that never started never reaches startJob, so notify its listeners here
+            JobRegistry.finished(jobId, JobRegistry.State.CANCELLED, null);
             CvcContext.runningTasks.remove(jobId);
-            System.out.println("Job id " + jobId + " is canceled");
+            JobCompletion.notifyListeners(jobId);
         }
     }
 
-    public static RawResults getRawResults(String jobId) throws Exception
+    /**
+     * @return true if the job is queued or running, or its code or results are available
+     */
+    public static boolean jobExists(String jobId)
+    {
+        return JobRegistry.get(jobId) != null || CvcContext.runningTasks.containsKey(jobId) ||
+                CvcContext.getJobStore().exists(jobId);
+    }
+
+    /**
+     * Reads part of an output of a job
+     *
+     * @param jobId     the id of the job
+     * @param fileName  {@link Constants#RESULTS_FILE} or {@link Constants#ERRORS_FILE}
+     * @param offset    the position of the first byte to read
+     * @param maxLength the maximum number of bytes to read
+     */
+    public static byte[] readOutput(String jobId, String fileName, long offset, int maxLength) throws IOException
+    {
+        return CvcContext.getJobStore().readOutput(jobId, fileName, offset, maxLength);
+    }
+
+    private static byte[] readOutput(String jobId, String fileName) throws IOException
     {
-        String resultsPath = CvcContext.jobsDirectory + "/" + jobId + "/" + Constants.RESULTS_FILE;
-        String errorsPath = CvcContext.jobsDirectory + "/" + jobId + "/" + Constants.ERRORS_FILE;
+        return readOutput(jobId, fileName, 0, Integer.MAX_VALUE);
+    }
 
-        byte[] resultsBytes = Files.readAllBytes(Paths.get(resultsPath));
-        byte[] errorsBytes = Files.readAllBytes(Paths.get(errorsPath));
+    public static RawResults getRawResults(String jobId) throws Exception
+    {
+        long started = System.nanoTime();
+        byte[] resultsBytes = readOutput(jobId, Constants.RESULTS_FILE);
+        byte[] errorsBytes = readOutput(jobId, Constants.ERRORS_FILE);
 
         StringBuilder builder = new StringBuilder();
         builder.append(new String(resultsBytes, Charset.defaultCharset()));
         builder.append(new String(errorsBytes, Charset.defaultCharset()));
 
         RawResults results = new RawResults();
-        results.data = builder.toString();
-
-        // preprocessing
-        // remove absolute path information for security reasons
-        String absolutePath = Paths.get(CvcContext.jobsDirectory + "/" + jobId + "/" ).toAbsolutePath().toString();
-        results.data = results.data.replace(absolutePath, "");
+        results.data = sanitize(jobId, builder.toString());
+        results.usage = getUsage(jobId);
+        Metrics.resultReadLatency.recordSince(started);
         return results;
     }
 
     /**
-     * Attempts to create a new job
+     * Reads the output of a job written since the given offsets, so that a client polling a
+     * running job only receives what is new. Only the new bytes are read from the outputs.
+     * While the job runs only complete lines are returned, which keeps multi-byte characters
+     * and the job path that is removed from the output within a single response.
      *
-     * @param jobId The unique Id of the job
-     * @param code  Lustre code
-     * @param args  cvc program arguments
+     * @param stdoutOffset the offset in the standard output to read from
+     * @param stderrOffset the offset in the standard error to read from
      */
-    public static Void createJob(String jobId, String code, List<String> args)
+    public static RawResults getRawResults(String jobId, long stdoutOffset, long stderrOffset) throws IOException
     {
-        File jobDir = saveJob(jobId, code);
+        long started = System.nanoTime();
+        // read the flag before the outputs, so all the output has been written if it is set
+        boolean finished = JobRegistry.isFinished(jobId);
+
+        JobRegistry.Entry entry = JobRegistry.get(jobId);
+        if (!finished && entry != null && entry.getStdoutLength() <= stdoutOffset &&
+                entry.getStderrLength() <= stderrOffset)
+        {
+            // nothing was written since the last request, so the outputs are not read
+            RawResults results = new RawResults();
+            results.stdout = "";
+            results.stderr = "";
+            results.stdoutOffset = stdoutOffset;
+            results.stderrOffset = stderrOffset;
+            Metrics.resultReadLatency.recordSince(started);
+            return results;
+        }
 
-        // create a file to store the results
-        File resultsFile = new File(jobDir, Constants.RESULTS_FILE);
-        File errorsFile = new File(jobDir, Constants.ERRORS_FILE);
+        byte[] stdout = readOutput(jobId, Constants.RESULTS_FILE, stdoutOffset, DELTA_SIZE);
+        byte[] stderr = readOutput(jobId, Constants.ERRORS_FILE, stderrOffset, DELTA_SIZE);
+        int stdoutLength = getCompleteLength(stdout, finished);
+        int stderrLength = getCompleteLength(stderr, finished);
 
-        String command = CvcContext.cvcCommand
-                .replace("{0}", jobDir.getAbsolutePath())
-                .replace("{1}", Constants.CODE_FILE);
+        RawResults results = new RawResults();
+        results.stdout = sanitize(jobId, new String(stdout, 0, stdoutLength, Charset.defaultCharset()));
+        results.stderr = sanitize(jobId, new String(stderr, 0, stderrLength, Charset.defaultCharset()));
+        results.stdoutOffset = stdoutOffset + stdoutLength;
+        results.stderrOffset = stderrOffset + stderrLength;
+        // the job is finished for the client once it has received all the output
+        results.jobFinished = finished && stdout.length < DELTA_SIZE && stderr.length < DELTA_SIZE;
+        if (results.jobFinished)
+        {
+            results.usage = getUsage(jobId);
+        }
+        Metrics.resultReadLatency.recordSince(started);
+        return results;
+    }
 
-        for (String argument : args)
+    /**
+     * @return the length of the bytes up to the last complete line, or all of them if the job
+     * finished or no line ends within a full read
+     */
+    private static int getCompleteLength(byte[] bytes, boolean finished)
+    {
+        if (finished || bytes.length == DELTA_SIZE)
         {
-            command += " " + argument;
+            return bytes.length;
         }
+        return Util.lastIndexOf(bytes, (byte) '\n') + 1;
+    }
+
+    /**
+     * @return the first answer in the standard output of a job: sat, unsat, unknown or the
+     *         SZS status of a TPTP problem, otherwise error if cvc reported an error or none
+     */
+    public static String getAnswer(String jobId)
+    {
+        try
+        {
+            boolean error = false;
+            for (String line : new String(readOutput(jobId, Constants.RESULTS_FILE), Charset.defaultCharset()).split("\n"))
+            {
+                String trimmed = line.trim();
+                if (trimmed.equals(SAT) || trimmed.equals(UNSAT) || trimmed.equals(UNKNOWN))
+                {
+                    return trimmed;
+                }
+                if (trimmed.startsWith(SZS_STATUS))
+                {
+                    return trimmed.substring(SZS_STATUS.length()).split(" ")[0];
+                }
+                error |= trimmed.startsWith("(error");
+            }
+            return error ? ERROR : NONE;
+        }
+        catch (IOException e)
+        {
+            log.error("reading the answer of job " + jobId + " says " + e.getMessage(), e);
+            return ERROR;
+        }
+    }
+
+    /**
+     * removes absolute path information for security reasons
+     */
+    private static String sanitize(String jobId, String output)
+    {
+        return output.replace(getAbsolutePath(jobId), "");
+    }
+
+    private static String getAbsolutePath(String jobId)
+    {
+        return CvcContext.getJobStore().getDirectory(jobId).getAbsolutePath();
+    }
+
+    /**
+     * Starts a job, and returns once its process is supervised by the {@link SolverEngine},
+     * which finishes the job when the process is gone, or once it runs in the {@link WarmSolverPool}.
+     * When the {@link JobStore} holds the job in memory, the code is written to the standard
+     * input of cvc. Otherwise cvc runs on the code file in the job directory.
+     *
+     * @param task  the task of the job, which is completed when the job finished
+     * @param code  Lustre code
+     * @param args  cvc program arguments
+     * @param cacheKey the key used to store the results in the {@link ResultCache}, or null
+     *                 if the results should not be cached
+     */
+    public static void startJob(JobTask task, String code, List<String> args, String cacheKey)
+    {
+        String jobId = task.getJobId();
+        // cancelled while the task was about to run
+        if (task.isCancelled())
+        {
+            new StartedJob(task, args, null, null, false, null, null, null)
+                    .finish(JobRegistry.State.CANCELLED, null, false, false);
+            return;
+        }
+        JobRegistry.started(jobId);
+        JobStore store = CvcContext.getJobStore();
+        boolean fromStdin = false;
+        File workingDir = null;
+        try
+        {
+            store.create(jobId, code);
+            fromStdin = CvcContext.cvcStdinCommand != null && store.isInMemory(jobId);
+            if (fromStdin)
+            {
+                // runlim writes its log in a local scratch directory instead of the jobs directory
+                workingDir = new File(new File(System.getProperty("java.io.tmpdir"), Constants.SCRATCH_DIR), jobId);
+                workingDir.mkdirs();
+            }
+            else
+            {
+                workingDir = store.persist(jobId);
+            }
+        }
+        catch (IOException e)
+        {
+            log.error("startJob says " + e.getMessage(), e);
+            new StartedJob(task, args, null, null, false, null, null, null)
+                    .finish(JobRegistry.State.FAILED, null, false, false);
+            return;
+        }
+
+        CommandTemplate template = fromStdin ? CvcContext.getCvcStdinCommandTemplate() :
+                CvcContext.getCvcCommandTemplate();
+        List<String> command = template.build(workingDir.getAbsolutePath(), args);
 
         // handle the timeout argument
         if(!args.contains(Constants.timeoutArgument))
         {
-            command += " " + Constants.timeoutArgument + " " + CvcContext.softTimeout;
+            command.add(Constants.timeoutArgument);
+            command.add(CvcContext.softTimeout);
         }
 
-        System.out.println(command);
+        System.out.println(String.join(" ", command));
 
+        OutputLimit limit = CvcContext.maxOutputBytes <= 0 ? null : new OutputLimit(CvcContext.maxOutputBytes,
+                CvcContext.outputTailBytes, () -> outputLimitExceeded(jobId));
+        OutputStream results = null;
+        OutputStream errors = null;
+        boolean started = false;
         try
         {
-            // delete the contents of the files if they exist
-            if(resultsFile.exists())
+            results = sanitizeAndLimit(jobId, JobRegistry.count(jobId,
+                    store.openOutput(jobId, Constants.RESULTS_FILE), true), limit);
+            errors = sanitizeAndLimit(jobId, JobRegistry.count(jobId,
+                    store.openOutput(jobId, Constants.ERRORS_FILE), false), limit);
+            StartedJob job = new StartedJob(task, args, results, errors, fromStdin, workingDir, cacheKey, limit);
+
+            WarmSolverPool pool = CvcContext.getWarmSolverPool();
+            if (pool != null && pool.accepts(args, code) && pool.start(jobId, code, results, errors, outcome ->
+            {
+                if (outcome.getState() == JobRegistry.State.TIMED_OUT)
+                {
+                    Metrics.jobsTimedOut.increment();
+                }
+                else if (outcome.getState() == JobRegistry.State.COMPLETED)
+                {
+                    Metrics.jobsCompleted.increment();
+                }
+                job.finish(outcome.getState(), null, false, outcome == WarmSolverPool.Outcome.CACHEABLE);
+            }))
             {
-                RandomAccessFile randomAccessFile = new RandomAccessFile(resultsFile,"rw");
-                randomAccessFile.setLength(0);
+                started = true;
+                return;
             }
 
-            if(errorsFile.exists())
+            ProcessBuilder processBuilder = new ProcessBuilder(command);
+            long spawned = System.nanoTime();
+            Process process = CvcContext.getProcessSupervisor().start(jobId, processBuilder);
+            Metrics.spawnLatency.recordSince(spawned);
+
+            // the engine copies the output as it is written, so that it can be streamed
+            SolverEngine engine = CvcContext.getSolverEngine();
+            engine.start(jobId, process, results, errors, (state, exitCode) -> job.finish(state, exitCode, true, true));
+            started = true;
+            // cancelled before the engine knew the job
+            if (task.isCancelled())
             {
-                RandomAccessFile randomAccessFile = new RandomAccessFile(errorsFile,"rw");
-                randomAccessFile.setLength(0);
+                engine.cancel(jobId);
             }
 
-            ProcessBuilder processBuilder = new ProcessBuilder(command.split(" "));
-            processBuilder.redirectOutput(resultsFile);
-            processBuilder.redirectError(errorsFile);
-            Process process = processBuilder.start();
-            process.waitFor(CvcContext.hardTimeout, TimeUnit.MILLISECONDS);
-            process.destroyForcibly();
-            process.waitFor();
+            if (fromStdin)
+            {
+                engine.writeInput(jobId, process, code.getBytes(Charset.defaultCharset()));
+            }
         }
         catch (Exception e)
         {
-            log.error("createJob says " + e.getMessage(), e);
+            log.error("startJob says " + e.getMessage(), e);
             try
             {
+                if (results != null)
+                {
+                    results.write(String.format("%s\n", e.getMessage()).getBytes(Charset.defaultCharset()));
+                }
+            }
+            catch (IOException exception)
+            {
+                exception.printStackTrace();
+            }
+            if (!started)
+            {
+                // kills the process if it started, before the slot is freed
+                CvcContext.getProcessSupervisor().release(jobId);
+                new StartedJob(task, args, results, errors, fromStdin, workingDir, null, null)
+                        .finish(JobRegistry.State.FAILED, null, false, false);
+            }
+        }
+    }
 
-                FileWriter fileWriter = new FileWriter(resultsFile, true);
+    /**
+     * A job that was started, which is finished once, after its process is gone
+     */
+    private static class StartedJob
+    {
+        private final JobTask task;
+        private final List<String> args;
+        private final OutputStream results;
+        private final OutputStream errors;
+        private final boolean fromStdin;
+        private final File workingDir;
+        private final String cacheKey;
+        private final OutputLimit limit;
 
-                Formatter formatter = new Formatter(fileWriter);
+        /**
+         * @param cacheKey the key of the results in the {@link ResultCache}, or null
+         * @param limit    the limit of the outputs, or null
+         */
+        StartedJob(JobTask task, List<String> args, OutputStream results, OutputStream errors,
+                   boolean fromStdin, File workingDir, String cacheKey, OutputLimit limit)
+        {
+            this.task = task;
+            this.args = args;
+            this.results = results;
+            this.errors = errors;
+            this.fromStdin = fromStdin;
+            this.workingDir = workingDir;
+            this.cacheKey = cacheKey;
+            this.limit = limit;
+        }
 
-                formatter.format("%s\n", e.getMessage());
+        /**
+         * Closes the outputs, records the usage and the final state of the job, caches its
+         * results, and frees its slot
+         *
+         * @param ranProcess whether cvc ran in a process of its own, which left a runlim log
+         * @param cacheable  whether the results can be cached if the job completed
+         */
+        void finish(JobRegistry.State state, Integer exitCode, boolean ranProcess, boolean cacheable)
+        {
+            String jobId = task.getJobId();
+            close(results);
+            close(errors);
+            if (fromStdin)
+            {
+                saveLog(jobId, workingDir);
+                FileUtils.deleteQuietly(workingDir);
+            }
+            if (ranProcess)
+            {
+                Usage usage = getUsage(jobId);
+                if (usage != null)
+                {
+                    UsageStatistics.record(args, usage);
+                    // runlim stopped cvc at one of its time limits
+                    if (state == JobRegistry.State.COMPLETED &&
+                            (Usage.TIME_LIMIT.equals(usage.limit) || Usage.REAL_TIME_LIMIT.equals(usage.limit)))
+                    {
+                        state = JobRegistry.State.TIMED_OUT;
+                    }
+                }
+            }
 
-                formatter.close();
+            // only once the outputs are closed, which writes the held back bytes and the tail of a
+            // truncated output
+            if (cacheable && cacheKey != null && state == JobRegistry.State.COMPLETED &&
+                    (limit == null || !limit.isExceeded()))
+            {
+                try
+                {
+                    cacheResults(jobId, cacheKey, exitCode == null ? 0 : exitCode);
+                }
+                catch (IOException e)
+                {
+                    log.error("caching the results of job " + jobId + " says " + e.getMessage(), e);
+                }
             }
-            catch (IOException exception)
+
+            JobRegistry.finished(jobId, state, exitCode);
+            // remove the task from running tasks
+            CvcContext.runningTasks.remove(jobId);
+            JobCompletion.notifyListeners(jobId);
+            task.complete();
+        }
+    }
+
+    /**
+     * @return the resource usage of a finished job from its runlim log, or null if the job
+     *         did not run under runlim or is still running
+     */
+    public static Usage getUsage(String jobId)
+    {
+        try
+        {
+            return RunlimLog.parse(readOutput(jobId, Constants.LOG_FILE)).toUsage();
+        }
+        catch (IOException e)
+        {
+            log.error("reading the log of job " + jobId + " says " + e.getMessage(), e);
+            return null;
+        }
+    }
+
+    /**
+     * Keeps the log that runlim wrote to the scratch directory of a job with the job
+     */
+    private static void saveLog(String jobId, File workingDir)
+    {
+        File logFile = new File(workingDir, Constants.LOG_FILE);
+        if (!logFile.exists())
+        {
+            return;
+        }
+        try (OutputStream output = CvcContext.getJobStore().openOutput(jobId, Constants.LOG_FILE))
+        {
+            Files.copy(logFile.toPath(), output);
+        }
+        catch (IOException e)
+        {
+            log.error("saving the log of job " + jobId + " says " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Wraps an output of a job, so that the path of the job directory is removed from the output
+     * as it is written, and the output is limited
+     *
+     * @param limit the limit shared by the outputs of the job, or null
+     */
+    private static OutputStream sanitizeAndLimit(String jobId, OutputStream output, OutputLimit limit)
+    {
+        if (limit != null)
+        {
+            output = limit.wrap(output);
+        }
+        return new SanitizingOutputStream(output, getAbsolutePath(jobId).getBytes(Charset.defaultCharset()));
+    }
+
+    /**
+     * Called while the output is copied, so the process is killed without waiting for it
+     */
+    private static void outputLimitExceeded(String jobId)
+    {
+        log.info("job " + jobId + " exceeded the output limit");
+        if (CvcContext.killOnOutputLimit)
+        {
+            CvcContext.getSolverEngine().terminate(jobId);
+        }
+    }
+
+    private static void close(OutputStream stream)
+    {
+        if (stream != null)
+        {
+            try
             {
-                exception.printStackTrace();
+                stream.close();
             }
+            catch (IOException e)
+            {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    static void cacheResults(String jobId, String cacheKey, int exitValue) throws IOException
+    {
+        String results = sanitize(jobId, new String(readOutput(jobId, Constants.RESULTS_FILE), Charset.defaultCharset()));
+        String errors = sanitize(jobId, new String(readOutput(jobId, Constants.ERRORS_FILE), Charset.defaultCharset()));
+
+        if (ResultCache.isCacheable(exitValue, results + errors))
+        {
+            ResultCache.put(cacheKey, new ResultCache.Entry(
+                    results.getBytes(Charset.defaultCharset()),
+                    errors.getBytes(Charset.defaultCharset())));
         }
-        finally
+    }
+
+    /**
+     * Converts the arguments of a request to cvc options
+     *
+     * @param arguments the arguments of the request by name
+     * @return the options and their values
+     * @throws IllegalArgumentException if an argument is unknown or its value is invalid
+     */
+    public static List<String> getArguments(Map<String, String> arguments)
+    {
+        // iterate the arguments in sorted order so that equivalent requests produce the same argument list
+        List<String> args = new ArrayList<>();
+        for (Map.Entry<String, String> pair : new TreeMap<>(arguments).entrySet())
         {
-            // remove the task from running tasks
-            if (CvcContext.runningTasks.containsKey(jobId))
+            String key = pair.getKey();
+            if (Util.containsIgnoreCase(RESTServices.specialAttrs, key))
             {
-                CvcContext.runningTasks.remove(jobId);
+                continue; //we handle the special attrs differently
+            }
+
+            String value = pair.getValue();
+
+            ArgumentSchema.CompiledArgument argument = CvcContext.getArgumentSchema().get(key);
+            if(argument == null || ! argument.isValid(value))
+            {
+                throw new IllegalArgumentException("Invalid argument: \"" + key + ": " + value + "\"");
+            }
+
+            if (value == null || value.isEmpty())
+            {
+                log.debug("found flag " + key);
+                args.add(argument.option);
+            } else
+            {
+                log.debug("found arg " + key + " = " + value);
+                //otherwise, add the name and value
+                args.add(argument.option);
+                args.add(value);
             }
         }
-        return null;
+        return args;
     }
 
-    public static File saveJob(String jobId, String code)
+    /**
+     * Prepares a job to be submitted to the {@link JobScheduler}, or finishes it right away
+     * with the results of an identical job if they are cached
+     *
+     * @param jobId    the id of the job
+     * @param code     the code of the job
+     * @param args     the options from {@link #getArguments(Map)}
+     * @param useCache whether the cached results of an identical job can be used
+     * @return the task that runs the job, which is registered in the running tasks,
+     *         or null if the job finished from the cache
+     */
+    public static JobTask prepareJob(String jobId, String code, List<String> args, boolean useCache)
+            throws IOException
     {
-        // create a new directory for the job
-        File jobDir = new File(CvcContext.jobsDirectory + "/" + jobId);
-        if (!jobDir.exists())
+        String cacheKey = null;
+        if (useCache && ResultCache.isEnabled())
         {
-            jobDir.mkdir();
+            cacheKey = ResultCache.key(code, args);
+            ResultCache.Entry cached = ResultCache.get(cacheKey);
+            if (cached != null)
+            {
+                // registered once its files exist, so that a failure leaves no entry that never finishes
+                createCachedJob(jobId, code, cached);
+                JobRegistry.register(jobId);
+                JobRegistry.finished(jobId, JobRegistry.State.COMPLETED, null);
+                return null;
+            }
         }
 
-        // create a file to store the Lustre code
-        File inputFile = new File(jobDir, Constants.CODE_FILE);
-        Util.writeToFile(code, inputFile);
+        String key = cacheKey;
+        JobTask future = new JobTask(jobId, task -> startJob(task, code, args, key));
+
+        // register the task before submitting it, so that it is never seen as finished before it runs
+        JobRegistry.register(jobId);
+        CvcContext.runningTasks.put(jobId, future);
+        return future;
+    }
 
-        return jobDir;
+    /**
+     * Creates a finished job from the results of an identical job without running cvc
+     *
+     * @param jobId  The unique Id of the job
+     * @param code   the code of the job
+     * @param cached the results of the identical job
+     */
+    public static void createCachedJob(String jobId, String code, ResultCache.Entry cached) throws IOException
+    {
+        JobStore store = CvcContext.getJobStore();
+        store.create(jobId, code);
+        try (OutputStream results = store.openOutput(jobId, Constants.RESULTS_FILE))
+        {
+            results.write(cached.results);
+        }
+        try (OutputStream errors = store.openOutput(jobId, Constants.ERRORS_FILE))
+        {
+            errors.write(cached.errors);
+        }
     }
 }
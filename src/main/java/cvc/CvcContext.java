@@ -16,7 +16,6 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import org.apache.commons.io.IOUtils;
 import javax.servlet.ServletContextEvent;
 import javax.servlet.ServletContextListener;
-import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.charset.Charset;
@@ -42,15 +41,133 @@ public class CvcContext implements ServletContextListener
         return cvcExecutorService;
     }
 
+    // null unless warmPoolSize is positive
+    private static WarmSolverPool warmSolverPool;
+
+    public static WarmSolverPool getWarmSolverPool()
+    {
+        return warmSolverPool;
+    }
+
+    public static ScheduledExecutorService getTaskScheduler()
+    {
+        return taskScheduler;
+    }
+
+    private static JobScheduler jobScheduler;
+
+    public static JobScheduler getJobScheduler()
+    {
+        return jobScheduler;
+    }
+
+    private static ProcessSupervisor processSupervisor;
+
+    public static ProcessSupervisor getProcessSupervisor()
+    {
+        return processSupervisor;
+    }
+
+    private static SolverEngine solverEngine;
+
+    public static SolverEngine getSolverEngine()
+    {
+        return solverEngine;
+    }
+
+    private static JobStore jobStore;
+
+    // the jobs on disk, which is also the job store unless jobs are held in memory
+    private static FileJobStore fileJobStore;
+
+    public static FileJobStore getFileJobStore()
+    {
+        return fileJobStore;
+    }
+
+    public static JobStore getJobStore()
+    {
+        return jobStore;
+    }
+
+    // used when the application runs outside the servlet container, e.g. by the benchmarks
+    public static void setJobStore(JobStore store)
+    {
+        jobStore = store;
+    }
+
+    // copies the output of running processes into the job files
+    private static final ExecutorService outputPumpService = Executors.newCachedThreadPool();
+
+    public static ExecutorService getOutputPumpService()
+    {
+        return outputPumpService;
+    }
+
+    // sends results and new output to the clients, with a thread per client that is being sent to,
+    // so that a stalled client does not hold up the others
+    private static final ExecutorService streamingService = Executors.newCachedThreadPool();
+
+    public static ExecutorService getStreamingService()
+    {
+        return streamingService;
+    }
+
+    // decides portfolio jobs as their configurations finish, apart from the clients they are sent to
+    private static final ExecutorService portfolioService = Executors.newFixedThreadPool(2);
+
+    public static ExecutorService getPortfolioService()
+    {
+        return portfolioService;
+    }
+
+    private static ArgumentSchema argumentSchema;
+
+    public static ArgumentSchema getArgumentSchema()
+    {
+        return argumentSchema;
+    }
+
+    private static CommandTemplate cvcCommandTemplate;
+
+    public static CommandTemplate getCvcCommandTemplate()
+    {
+        return cvcCommandTemplate;
+    }
+
+    // null unless cvcStdinCommand is configured
+    private static CommandTemplate cvcStdinCommandTemplate;
+
+    public static CommandTemplate getCvcStdinCommandTemplate()
+    {
+        return cvcStdinCommandTemplate;
+    }
+
     public static String cvcPath;
     public static String cvcCommand;
-    public static int maxThreads;
+    public static String cvcStdinCommand;
+    public static int maxThreads; // the solver slots, the jobs that run at the same time
 
     public static HashMap<String, Argument> cvcArguments;
 
     public static String jobsDirectory;
     public static String examplesDirectory;
 
+    public static long maxOutputBytes; // of all the streams of a job, 0 for no limit
+    public static int outputTailBytes; // of each stream kept once the limit is exceeded
+    public static boolean killOnOutputLimit;
+
+    public static int maxBatchSize; // inputs of one batch
+    public static int maxBatchesPerClient; // unfinished batches of one client
+    public static int maxBatchJobs; // unfinished jobs of all the batches
+    public static int maxPortfolioSize; // configurations of one job
+    public static long statusRetentionMinutes; // how long the status of a finished job is kept in memory
+    public static long maxAwaitSeconds; // the longest timeout of /awaitResult
+
+    public static String adminKey; // the API key of the admin endpoints, which are disabled if it is empty
+    public static String examplesReport; // the report of the last run of the examples
+    public static String examplesBaseline; // the report the runs of the examples are compared with
+
     public static String softTimeout; // milliseconds
     public static int hardTimeout; // milliseconds
 
@@ -63,24 +180,32 @@ public class CvcContext implements ServletContextListener
     @Override
     public void contextInitialized(ServletContextEvent event)
     {
-        LoadConfigurations();
+        LoadConfigurations(event.getServletContext().getContextPath());
         LoadArguments();
 
         examplesDirectory = getResourceDirectory(Constants.examplesDir);
+        try
+        {
+            ExamplesCatalog.load(examplesDirectory);
+        }
+        catch (Exception exception)
+        {
+            exception.printStackTrace();
+        }
 
-        /*  Create a task that deletes job logs older than 3 days */
-        final Runnable clearJobLogTask = new RobustRunnable("clearJobLogTask")
+        /*  Create a task that deletes the temporary jobs that are older than the age budget */
+        final Runnable retentionTask = new RobustRunnable("retentionTask")
         {
             @Override
             protected void dorun()
             {
-                Util.clearOldFiles(new File(jobsDirectory).getAbsolutePath(), 3);
+                jobStore.enforceRetention();
             }
         };
-        taskScheduler.scheduleAtFixedRate(clearJobLogTask, 0, 1, TimeUnit.DAYS);
+        taskScheduler.scheduleWithFixedDelay(retentionTask, 1, 1, TimeUnit.MINUTES);
     }
 
-    private void LoadConfigurations()
+    private void LoadConfigurations(String contextPath)
     {
         InputStream inputStream =
                 CvcContext.class.getResourceAsStream("/configurations.json");
@@ -96,12 +221,80 @@ public class CvcContext implements ServletContextListener
 
             cvcPath= configurations.get("cvcPath");
             jobsDirectory = configurations.get("jobsDirectory");
+            // before any process is started, so that only the processes of a previous run are killed
+            processSupervisor = new ProcessSupervisor(jobsDirectory, contextPath);
+            processSupervisor.reconcile();
             cvcCommand = configurations.get("cvcCommand");
-            maxThreads = Integer.parseInt(configurations.get("maxThreads"));
-            cvcExecutorService = newFixedThreadPool(maxThreads);
+            cvcStdinCommand = configurations.get("cvcStdinCommand");
+            cvcCommandTemplate = new CommandTemplate(cvcCommand);
+            if (cvcStdinCommand != null)
+            {
+                cvcStdinCommandTemplate = new CommandTemplate(cvcStdinCommand);
+            }
+            maxThreads = Integer.parseInt(configurations.getOrDefault("solverSlots",
+                    configurations.get("maxThreads")));
+            // the threads only start the jobs, whose processes are supervised by the solver engine
+            int starterThreads = Integer.parseInt(configurations.getOrDefault("starterThreads", "4"));
+            cvcExecutorService = newFixedThreadPool(Math.max(1, Math.min(starterThreads, maxThreads)));
 
             softTimeout = configurations.get("softTimeout");
             hardTimeout = Integer.parseInt(configurations.get("hardTimeout"));
+            solverEngine = new SolverEngine(processSupervisor, hardTimeout);
+
+            maxOutputBytes = Long.parseLong(configurations.getOrDefault("maxOutputMegabytes", "0")) * 1024 * 1024;
+            outputTailBytes = Integer.parseInt(configurations.getOrDefault("outputTailKilobytes", "64")) * 1024;
+            killOnOutputLimit = Boolean.parseBoolean(configurations.getOrDefault("killOnOutputLimit", "false"));
+
+            maxBatchSize = Integer.parseInt(configurations.getOrDefault("maxBatchSize", "500"));
+            maxBatchesPerClient = Integer.parseInt(configurations.getOrDefault("maxBatchesPerClient", "2"));
+            maxBatchJobs = Integer.parseInt(configurations.getOrDefault("maxBatchJobs", "2000"));
+            maxPortfolioSize = Integer.parseInt(configurations.getOrDefault("maxPortfolioSize", "8"));
+            statusRetentionMinutes = Long.parseLong(configurations.getOrDefault("statusRetentionMinutes", "60"));
+            maxAwaitSeconds = Long.parseLong(configurations.getOrDefault("maxAwaitSeconds", "60"));
+
+            adminKey = configurations.getOrDefault("adminKey", "");
+            examplesReport = configurations.getOrDefault("examplesReport", "examples-report.json");
+            examplesBaseline = configurations.getOrDefault("examplesBaseline", "examples-baseline.json");
+
+            int maxQueuedJobs = Integer.parseInt(configurations.getOrDefault("maxQueuedJobs", "200"));
+            int maxRunningJobsPerClient = Integer.parseInt(configurations.getOrDefault(
+                    "maxRunningJobsPerClient", Integer.toString(maxThreads)));
+            int maxQueuedJobsPerClient = Integer.parseInt(configurations.getOrDefault(
+                    "maxQueuedJobsPerClient", Integer.toString(maxQueuedJobs)));
+            String schedulingPolicy = configurations.getOrDefault("schedulingPolicy", JobScheduler.FAIR_POLICY);
+            double schedulingAging = Double.parseDouble(configurations.getOrDefault("schedulingAging", "1"));
+            jobScheduler = new JobScheduler(cvcExecutorService, maxThreads, maxQueuedJobs,
+                    maxRunningJobsPerClient, maxQueuedJobsPerClient, Long.parseLong(softTimeout) / 10,
+                    schedulingPolicy, schedulingAging);
+
+            int warmPoolSize = Integer.parseInt(configurations.getOrDefault("warmPoolSize", "0"));
+            if (warmPoolSize > 0)
+            {
+                warmSolverPool = new WarmSolverPool(configurations.get("warmPoolCommand"), warmPoolSize,
+                        Integer.parseInt(configurations.getOrDefault("warmPoolMaxUses", "100")));
+            }
+
+            fileJobStore = new FileJobStore(jobsDirectory,
+                    Long.parseLong(configurations.getOrDefault("jobsMegabytes", "0")) * 1024 * 1024,
+                    TimeUnit.HOURS.toMillis(Long.parseLong(configurations.getOrDefault("jobRetentionHours", "72"))));
+            // jobs are found in the flat layout until they are moved
+            Thread loader = new Thread(fileJobStore::load, "loadJobs");
+            loader.setDaemon(true);
+            loader.start();
+            long memoryJobStoreSize = Long.parseLong(configurations.getOrDefault(
+                    "memoryJobStoreMegabytes", "0")) * 1024 * 1024;
+            if (memoryJobStoreSize > 0)
+            {
+                jobStore = new MemoryJobStore(fileJobStore, memoryJobStoreSize,
+                        Long.parseLong(configurations.getOrDefault("memoryJobStoreOutputLimit", "1048576")));
+            }
+            else
+            {
+                jobStore = fileJobStore;
+            }
+
+            ResultCache.setCapacity(Long.parseLong(
+                    configurations.getOrDefault("resultCacheMegabytes", "0")) * 1024 * 1024);
         }
         catch (IOException exception)
         {
@@ -121,6 +314,7 @@ public class CvcContext implements ServletContextListener
             ObjectMapper mapper = new ObjectMapper();
             cvcArguments = mapper.readValue(json,
                     new TypeReference<HashMap<String, Argument>>(){});
+            argumentSchema = new ArgumentSchema(cvcArguments);
         }
         catch (Exception exception)
         {
@@ -133,7 +327,17 @@ public class CvcContext implements ServletContextListener
         try
         {
             cvcExecutorService.shutdown();
+            solverEngine.shutdown();
+            if (warmSolverPool != null)
+            {
+                warmSolverPool.shutdown();
+            }
+            outputPumpService.shutdown();
+            streamingService.shutdown();
+            portfolioService.shutdown();
+            jobStore.shutdown();
             taskScheduler.shutdown();
+            processSupervisor.shutdown();
         }
         catch (Exception e)
         {
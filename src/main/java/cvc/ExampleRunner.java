@@ -0,0 +1,371 @@
+/* This file is part of the cvc-webservices.
+ *  Copyright (c) 2018 by the Board of Trustees of the University of Iowa
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you
+ *  may not use this file except in compliance with the License.  You
+ *  may obtain a copy of the License at
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package cvc;
+
+import cvc.Contracts.ExampleResult;
+import cvc.Contracts.ExamplesReport;
+import cvc.Contracts.Regression;
+import cvc.Contracts.Usage;
+import org.apache.commons.io.FileUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.regex.Pattern;
+
+/**
+ * Runs the bundled examples through {@link CvcClient} and compares the answers and wall
+ * times with a baseline report, e.g. before a new cvc binary or a new solverSlots is rolled out.
+ * The examples are queued in the {@link JobScheduler} at a given concurrency as the jobs of an
+ * admin client, so a run shares the solver slots with the other clients, and run as temporary
+ * jobs with the input language of their kind. The wall time of an example is the time its job
+ * ran, without the time it was queued.
+ * Runs from the command line with the configuration of the web service:
+ * <pre>
+ * java cvc.ExampleRunner [--filter regex] [--concurrency n] [--report file] [--baseline file] [--save-baseline]
+ * </pre>
+ * and exits with 1 if there are regressions.
+ */
+
+public class ExampleRunner
+{
+    // the input language of the examples of each kind
+    private static final Map<String, String> LANGUAGES = new HashMap<>();
+
+    static
+    {
+        LANGUAGES.put("cvc", "cvc4");
+        LANGUAGES.put("smt-lib", "smtlib2.6");
+        LANGUAGES.put("sygus", "sygus");
+        LANGUAGES.put("tptp", "tptp");
+    }
+
+    // the client the examples are queued as
+    private static final String CLIENT = "admin:examples";
+
+    // one run at a time, so that runs do not slow each other down
+    private static final AtomicBoolean running = new AtomicBoolean();
+
+    public static class Options
+    {
+        // a regular expression found in "kind/name" of the examples to run, or null for all
+        public String filter;
+        public int concurrency = 1;
+        // where the report is written, or null
+        public File report;
+        // the report to compare with, or null
+        public File baseline;
+        // whether the report replaces the baseline
+        public boolean saveBaseline;
+        // a slowdown is reported when the wall time grows by this factor and by minSlowdown
+        public double slowdownFactor = 1.5;
+        public long minSlowdown = 100; // milliseconds
+    }
+
+    private static class Example
+    {
+        final String kind;
+        final String name;
+        final File codeFile;
+
+        Example(String kind, String name, File codeFile)
+        {
+            this.kind = kind;
+            this.name = name;
+            this.codeFile = codeFile;
+        }
+    }
+
+    /**
+     * Runs the examples, writes the report and compares it with the baseline
+     *
+     * @throws IllegalStateException if another run is in progress
+     */
+    public static ExamplesReport run(Options options) throws Exception
+    {
+        if (!running.compareAndSet(false, true))
+        {
+            throw new IllegalStateException("The examples are already running");
+        }
+        try
+        {
+            ExamplesReport report = runExamples(options);
+
+            ExamplesReport baseline = null;
+            if (options.baseline != null && options.baseline.exists())
+            {
+                baseline = Util.jsonMapper.readValue(options.baseline, ExamplesReport.class);
+            }
+            report.regressions = compare(baseline, report, options).toArray(new Regression[0]);
+
+            if (options.report != null)
+            {
+                Util.jsonMapper.writerWithDefaultPrettyPrinter().writeValue(options.report, report);
+            }
+            if (options.saveBaseline && options.baseline != null)
+            {
+                Util.jsonMapper.writerWithDefaultPrettyPrinter().writeValue(options.baseline, report);
+            }
+            return report;
+        }
+        finally
+        {
+            running.set(false);
+        }
+    }
+
+    private static ExamplesReport runExamples(Options options) throws Exception
+    {
+        List<Example> examples = listExamples(CvcContext.examplesDirectory, options.filter);
+
+        ExamplesReport report = new ExamplesReport();
+        report.started = System.currentTimeMillis();
+        report.concurrency = options.concurrency;
+        report.filter = options.filter;
+
+        ExecutorService executorService = Executors.newFixedThreadPool(options.concurrency);
+        try
+        {
+            List<Future<ExampleResult>> futures = new ArrayList<>();
+            for (Example example : examples)
+            {
+                futures.add(executorService.submit(() -> runExample(example)));
+            }
+
+            report.examples = new ExampleResult[futures.size()];
+            for (int i = 0; i < futures.size(); i++)
+            {
+                report.examples[i] = futures.get(i).get();
+            }
+        }
+        finally
+        {
+            executorService.shutdownNow();
+        }
+        report.wallTime = System.currentTimeMillis() - report.started;
+        return report;
+    }
+
+    /**
+     * @return the examples whose "kind/name" contains a match of the filter, in the order of their paths
+     */
+    private static List<Example> listExamples(String directory, String filter) throws IOException
+    {
+        File[] folders = new File(directory).listFiles(File::isDirectory);
+        if (folders == null)
+        {
+            throw new IOException("could not read the examples directory " + directory);
+        }
+        Arrays.sort(folders);
+
+        Pattern pattern = filter == null ? null : Pattern.compile(filter);
+        List<Example> examples = new ArrayList<>();
+        for (File folder : folders)
+        {
+            String[] names = folder.list();
+            Arrays.sort(names);
+            for (String name : names)
+            {
+                File codeFile = new File(new File(folder, name), name + ".txt");
+                String path = folder.getName() + "/" + name;
+                if (codeFile.isFile() && (pattern == null || pattern.matcher(path).find()))
+                {
+                    examples.add(new Example(folder.getName(), name, codeFile));
+                }
+            }
+        }
+        return examples;
+    }
+
+    private static ExampleResult runExample(Example example) throws IOException
+    {
+        Map<String, String> arguments = new HashMap<>();
+        if (LANGUAGES.containsKey(example.kind))
+        {
+            arguments.put("lang", LANGUAGES.get(example.kind));
+        }
+        List<String> args = CvcClient.getArguments(arguments);
+
+        String jobId = Constants.tempPrefix + "example-" + UUID.randomUUID().toString();
+        String code = FileUtils.readFileToString(example.codeFile, Charset.defaultCharset());
+        JobTask task = CvcClient.prepareJob(jobId, code, args, false);
+
+        try
+        {
+            submit(jobId, JobFeatures.of(code, arguments), task);
+            task.get();
+        }
+        catch (InterruptedException | ExecutionException e)
+        {
+            // another example failed and the run stopped, so the job does not keep its slot
+            CvcClient.cancelJob(jobId);
+            throw new IOException("running example " + example.name + " says " + e.getMessage(), e);
+        }
+
+        ExampleResult result = new ExampleResult();
+        result.kind = example.kind;
+        result.name = example.name;
+        JobRegistry.Entry entry = JobRegistry.get(jobId);
+        Long runtime = entry == null ? null : entry.getRuntime();
+        result.wallTime = runtime == null ? 0 : runtime;
+        result.answer = CvcClient.getAnswer(jobId);
+
+        Usage usage = CvcClient.getUsage(jobId);
+        if (usage != null)
+        {
+            result.peakMemory = usage.maxMemory;
+            result.status = usage.status;
+        }
+        return result;
+    }
+
+    /**
+     * Queues the job of an example, and waits as long as the scheduler tells a client to
+     * whenever the queue is full
+     */
+    private static void submit(String jobId, JobFeatures features, JobTask task) throws InterruptedException
+    {
+        JobScheduler scheduler = CvcContext.getJobScheduler();
+        while (true)
+        {
+            try
+            {
+                scheduler.submit(jobId, CLIENT, features, task);
+                return;
+            }
+            catch (RejectedExecutionException e)
+            {
+                Thread.sleep(TimeUnit.SECONDS.toMillis(scheduler.getRetryAfter()));
+            }
+        }
+    }
+
+    /**
+     * @return the examples whose answer changed or that slowed down since the baseline
+     */
+    private static List<Regression> compare(ExamplesReport baseline, ExamplesReport report, Options options)
+    {
+        if (baseline == null || baseline.examples == null)
+        {
+            return Collections.emptyList();
+        }
+
+        Map<String, ExampleResult> baselineResults = new HashMap<>();
+        for (ExampleResult result : baseline.examples)
+        {
+            baselineResults.put(result.kind + "/" + result.name, result);
+        }
+
+        List<Regression> regressions = new ArrayList<>();
+        for (ExampleResult result : report.examples)
+        {
+            ExampleResult before = baselineResults.get(result.kind + "/" + result.name);
+            if (before == null)
+            {
+                continue;
+            }
+            if (before.answer != null && !before.answer.equals(result.answer))
+            {
+                regressions.add(regression(result, Regression.ANSWER, before.answer, result.answer));
+            }
+            if (result.wallTime > before.wallTime * options.slowdownFactor &&
+                    result.wallTime - before.wallTime > options.minSlowdown)
+            {
+                regressions.add(regression(result, Regression.SLOWDOWN,
+                        Long.toString(before.wallTime), Long.toString(result.wallTime)));
+            }
+        }
+        return regressions;
+    }
+
+    private static Regression regression(ExampleResult result, String type, String baseline, String current)
+    {
+        Regression regression = new Regression();
+        regression.kind = result.kind;
+        regression.name = result.name;
+        regression.type = type;
+        regression.baseline = baseline;
+        regression.current = current;
+        return regression;
+    }
+
+    public static void main(String[] args) throws Exception
+    {
+        CvcContext context = new CvcContext();
+        context.contextInitialized(null);
+
+        Options options = new Options();
+        options.report = new File(CvcContext.examplesReport);
+        options.baseline = new File(CvcContext.examplesBaseline);
+        for (int i = 0; i < args.length; i++)
+        {
+            switch (args[i])
+            {
+                case "--filter":
+                    options.filter = args[++i];
+                    break;
+                case "--concurrency":
+                    options.concurrency = Integer.parseInt(args[++i]);
+                    break;
+                case "--report":
+                    options.report = new File(args[++i]);
+                    break;
+                case "--baseline":
+                    options.baseline = new File(args[++i]);
+                    break;
+                case "--save-baseline":
+                    options.saveBaseline = true;
+                    break;
+                default:
+                    System.err.println("unknown option " + args[i]);
+                    System.exit(2);
+            }
+        }
+
+        int status;
+        try
+        {
+            ExamplesReport report = run(options);
+            for (ExampleResult result : report.examples)
+            {
+                System.out.println(String.format("%-40s %-10s %8d ms %8s MB", result.kind + "/" + result.name,
+                        result.answer, result.wallTime, result.peakMemory));
+            }
+            for (Regression regression : report.regressions)
+            {
+                System.out.println(String.format("REGRESSION %s %s/%s: %s -> %s", regression.type,
+                        regression.kind, regression.name, regression.baseline, regression.current));
+            }
+            status = report.regressions.length > 0 ? 1 : 0;
+        }
+        finally
+        {
+            context.contextDestroyed(null);
+        }
+        System.exit(status);
+    }
+}
@@ -0,0 +1,216 @@
+/* This file is part of the cvc-webservices.
+ *  Copyright (c) 2018 by the Board of Trustees of the University of Iowa
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you
+ *  may not use this file except in compliance with the License.  You
+ *  may obtain a copy of the License at
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package cvc;
+
+import cvc.Contracts.Examples;
+import cvc.Contracts.Input;
+import cvc.Contracts.Kind;
+import org.apache.commons.io.FileUtils;
+
+import javax.ws.rs.core.CacheControl;
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Request;
+import javax.ws.rs.core.Response;
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBException;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The examples directory loaded into memory, with the JSON and XML bodies of the
+ * responses serialized ahead of time.
+ * A catalog is immutable; {@link #load(String)} replaces the current catalog with a new one.
+ * Every body has a strong ETag derived from its bytes, so clients revalidate their copy
+ * with If-None-Match and get 304 Not Modified until the examples change.
+ */
+
+public class ExamplesCatalog
+{
+    // how long clients may use their copy without revalidating it
+    private static final int MAX_AGE = 300; // seconds
+
+    /**
+     * The serialized bodies of one response
+     */
+    public static class Representation
+    {
+        private final byte[] json;
+        private final byte[] xml;
+        private final EntityTag jsonTag;
+        private final EntityTag xmlTag;
+
+        private Representation(Object entity) throws IOException, JAXBException
+        {
+            json = Util.jsonMapper.writeValueAsBytes(entity);
+
+            ByteArrayOutputStream stream = new ByteArrayOutputStream();
+            JAXBContext.newInstance(entity.getClass()).createMarshaller().marshal(entity, stream);
+            xml = stream.toByteArray();
+
+            jsonTag = new EntityTag(hash(json));
+            xmlTag = new EntityTag(hash(xml));
+        }
+
+        /**
+         * @return 304 if the client has the current body, otherwise the body in the preferred media type
+         */
+        public Response respond(Request request, HttpHeaders headers)
+        {
+            boolean isXml = prefersXml(headers);
+            EntityTag tag = isXml ? xmlTag : jsonTag;
+
+            CacheControl cacheControl = new CacheControl();
+            cacheControl.setMaxAge(MAX_AGE);
+
+            Response.ResponseBuilder builder = request.evaluatePreconditions(tag);
+            if (builder == null)
+            {
+                builder = Response.ok(isXml ? xml : json, isXml ? MediaType.APPLICATION_XML_TYPE :
+                        MediaType.APPLICATION_JSON_TYPE).tag(tag);
+            }
+            return builder.cacheControl(cacheControl).header(HttpHeaders.VARY, HttpHeaders.ACCEPT).build();
+        }
+
+        private static boolean prefersXml(HttpHeaders headers)
+        {
+            // JSON is the default, as it is the first media type the endpoints produce
+            for (MediaType type : headers.getAcceptableMediaTypes())
+            {
+                if (type.isWildcardType() || MediaType.APPLICATION_JSON_TYPE.isCompatible(type))
+                {
+                    return false;
+                }
+                if (MediaType.APPLICATION_XML_TYPE.isCompatible(type) || MediaType.TEXT_XML_TYPE.isCompatible(type))
+                {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    private static volatile ExamplesCatalog current;
+
+    private final Representation examples;
+    private final Map<String, Representation> exampleByPath;
+
+    private ExamplesCatalog(Representation examples, Map<String, Representation> exampleByPath)
+    {
+        this.examples = examples;
+        this.exampleByPath = exampleByPath;
+    }
+
+    /**
+     * @return the current catalog, or null if it was not loaded
+     */
+    public static ExamplesCatalog get()
+    {
+        return current;
+    }
+
+    /**
+     * Reads the examples directory and makes it the current catalog
+     *
+     * @param directory a directory with a folder for every kind, which has a folder for
+     *                  every example that contains the code in a file named after the example
+     */
+    public static ExamplesCatalog load(String directory) throws IOException, JAXBException
+    {
+        File[] folders = new File(directory).listFiles(File::isDirectory);
+        if (folders == null)
+        {
+            throw new IOException("could not read the examples directory " + directory);
+        }
+        // sort so that the bodies, and therefore their tags, do not depend on the order of the files
+        Arrays.sort(folders);
+
+        Map<String, Representation> exampleByPath = new HashMap<>();
+        List<Kind> kinds = new ArrayList<>();
+        for (File folder : folders)
+        {
+            String[] names = folder.list();
+            Arrays.sort(names);
+
+            Kind kind = new Kind();
+            kind.name = folder.getName();
+            kind.names = names;
+            kinds.add(kind);
+
+            for (String name : names)
+            {
+                File codeFile = new File(new File(folder, name), name + ".txt");
+                if (codeFile.isFile())
+                {
+                    Input input = new Input();
+                    input.code = FileUtils.readFileToString(codeFile, Charset.defaultCharset());
+                    exampleByPath.put(kind.name + "/" + name, new Representation(input));
+                }
+            }
+        }
+
+        Examples examples = new Examples();
+        examples.kinds = kinds.toArray(new Kind[0]);
+
+        ExamplesCatalog catalog = new ExamplesCatalog(new Representation(examples),
+                Collections.unmodifiableMap(exampleByPath));
+        current = catalog;
+        return catalog;
+    }
+
+    public Representation getExamples()
+    {
+        return examples;
+    }
+
+    /**
+     * @return the example, or null if there is no such example
+     */
+    public Representation getExample(String kind, String example)
+    {
+        return exampleByPath.get(kind + "/" + example);
+    }
+
+    public int size()
+    {
+        return exampleByPath.size();
+    }
+
+    private static String hash(byte[] bytes)
+    {
+        try
+        {
+            StringBuilder builder = new StringBuilder();
+            for (byte b : MessageDigest.getInstance("SHA-256").digest(bytes))
+            {
+                builder.append(String.format("%02x", b));
+            }
+            return builder.toString();
+        }
+        catch (NoSuchAlgorithmException exception)
+        {
+            throw new IllegalStateException(exception);
+        }
+    }
+}
@@ -0,0 +1,175 @@
+/* This file is part of the cvc-webservices.
+ *  Copyright (c) 2018 by the Board of Trustees of the University of Iowa
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you
+ *  may not use this file except in compliance with the License.  You
+ *  may obtain a copy of the License at
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package cvc;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+
+/**
+ * Stores every job in its own directory under the jobs directory, placed by the
+ * {@link JobLayout}, with the code in {@link Constants#CODE_FILE} and the outputs in files
+ * named after them.
+ */
+
+public class FileJobStore implements JobStore
+{
+    // how often the size of an output is updated in the retention index while it is written
+    private static final long REPORT_BYTES = 1024 * 1024;
+
+    private final File directory;
+    private final JobLayout layout;
+    private final JobRetention retention;
+
+    /**
+     * @param maxBytes the size budget of the temporary jobs, or 0
+     * @param maxAge   the age budget of the temporary jobs in milliseconds, or 0
+     */
+    public FileJobStore(String directory, long maxBytes, long maxAge)
+    {
+        this.directory = new File(directory);
+        this.layout = new JobLayout(this.directory);
+        this.retention = new JobRetention(layout, this.directory, maxBytes, maxAge);
+    }
+
+    @Override
+    public File getDirectory(String jobId)
+    {
+        return layout.getDirectory(jobId);
+    }
+
+    /**
+     * Moves the jobs of the flat layout of earlier versions into the shards of the layout,
+     * then loads the retention index of the jobs on disk
+     */
+    public void load()
+    {
+        layout.migrate();
+        retention.load();
+        retention.enforce();
+    }
+
+    public long getTemporaryBytes()
+    {
+        return retention.getTotalBytes();
+    }
+
+    @Override
+    public void create(String jobId, String code) throws IOException
+    {
+        // create a new directory for the job
+        File jobDir = layout.create(jobId);
+        retention.created(jobId, jobDir);
+
+        // create a file to store the code
+        File inputFile = new File(jobDir, Constants.CODE_FILE);
+        Util.writeToFile(code, inputFile);
+        retention.written(jobId, inputFile);
+    }
+
+    @Override
+    public boolean exists(String jobId)
+    {
+        return getDirectory(jobId).exists();
+    }
+
+    @Override
+    public String getCode(String jobId) throws IOException
+    {
+        File codeFile = new File(getDirectory(jobId), Constants.CODE_FILE);
+        return new String(Files.readAllBytes(codeFile.toPath()), Charset.defaultCharset());
+    }
+
+    @Override
+    public OutputStream openOutput(String jobId, String name) throws IOException
+    {
+        File file = new File(getDirectory(jobId), name);
+        return new FileOutputStream(file)
+        {
+            private long length;
+            private long reported;
+
+            @Override
+            public void write(int b) throws IOException
+            {
+                super.write(b);
+                wrote(1);
+            }
+
+            @Override
+            public void write(byte[] bytes) throws IOException
+            {
+                write(bytes, 0, bytes.length);
+            }
+
+            @Override
+            public void write(byte[] bytes, int offset, int count) throws IOException
+            {
+                super.write(bytes, offset, count);
+                wrote(count);
+            }
+
+            // a running job counts against the size budget while it writes
+            private void wrote(int count)
+            {
+                length += count;
+                if (length - reported >= REPORT_BYTES)
+                {
+                    reported = length;
+                    retention.written(jobId, name, length);
+                }
+            }
+
+            @Override
+            public void close() throws IOException
+            {
+                super.close();
+                retention.written(jobId, file);
+            }
+        };
+    }
+
+    @Override
+    public byte[] readOutput(String jobId, String name, long offset, int maxLength) throws IOException
+    {
+        return Util.readFromOffset(new File(getDirectory(jobId), name), offset, maxLength);
+    }
+
+    @Override
+    public boolean isInMemory(String jobId)
+    {
+        return false;
+    }
+
+    @Override
+    public File persist(String jobId)
+    {
+        return getDirectory(jobId);
+    }
+
+    @Override
+    public void enforceRetention()
+    {
+        retention.enforce();
+        retention.saveIfChanged();
+    }
+
+    @Override
+    public void shutdown()
+    {
+        retention.save();
+    }
+}
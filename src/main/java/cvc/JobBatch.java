@@ -0,0 +1,403 @@
+/* This file is part of the cvc-webservices.
+ *  Copyright (c) 2018 by the Board of Trustees of the University of Iowa
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you
+ *  may not use this file except in compliance with the License.  You
+ *  may obtain a copy of the License at
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package cvc;
+
+import cvc.Contracts.BatchStatus;
+import cvc.Contracts.Input;
+import cvc.Contracts.RawResults;
+import org.apache.log4j.Logger;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Jobs submitted together in one request.
+ * The jobs are fed to the {@link JobScheduler} as the client of the batch, and the jobs
+ * that do not fit in the queue wait in the batch until a job of the batch finishes, so a
+ * batch larger than the queue of a client is not rejected. Since those jobs bypass the
+ * limits of the queue, the unfinished batches of a client and the unfinished jobs of all the
+ * batches are limited instead.
+ * A batch is kept for its status and results for an hour after its last job finished.
+ */
+
+public class JobBatch
+{
+    private static final Logger log = Logger.getLogger(JobBatch.class);
+
+    private static final long RETENTION = 60; // minutes
+
+    /**
+     * The destination of the results, e.g. a chunked response
+     */
+    public interface Sink
+    {
+        void send(RawResults results) throws IOException;
+
+        void close();
+    }
+
+    private static class PendingJob
+    {
+        final String jobId;
+        final JobFeatures features;
+        final JobTask task;
+
+        PendingJob(String jobId, JobFeatures features, JobTask task)
+        {
+            this.jobId = jobId;
+            this.features = features;
+            this.task = task;
+        }
+    }
+
+    private static final ConcurrentMap<String, JobBatch> batches = new ConcurrentHashMap<>();
+
+    // guarded by JobBatch.class
+    private static final Map<String, Integer> unfinishedBatches = new HashMap<>(); // by client
+    private static int unfinishedJobs; // of all the batches
+
+    private final String batchId = UUID.randomUUID().toString();
+    private final String client;
+    private final String[] jobIds;
+
+    // guarded by this
+    private final ArrayDeque<PendingJob> pending = new ArrayDeque<>();
+    private final Set<String> submitted = new HashSet<>(); // and not finished
+    private int unfinished;
+    private boolean retryScheduled;
+
+    private JobBatch(String client, int size)
+    {
+        this.client = client;
+        this.jobIds = new String[size];
+        this.unfinished = size;
+    }
+
+    /**
+     * @return the batch, or null if there is no such batch
+     */
+    public static JobBatch get(String batchId)
+    {
+        return batches.get(batchId);
+    }
+
+    /**
+     * Creates the jobs of a batch and submits as many as the queue accepts
+     *
+     * @param client the client that submitted the batch
+     * @param inputs the jobs, with the id of each job set if it was not given
+     * @throws IllegalArgumentException if an input has an invalid argument, in which case no job is created
+     * @throws RejectedExecutionException if the client has too many unfinished batches, or the
+     *                                    batches too many unfinished jobs, in which case no job is created
+     */
+    public static JobBatch submit(String client, Input[] inputs) throws IOException
+    {
+        List<List<String>> args = new ArrayList<>();
+        for (int i = 0; i < inputs.length; i++)
+        {
+            try
+            {
+                args.add(CvcClient.getArguments(inputs[i].arguments));
+            }
+            catch (IllegalArgumentException e)
+            {
+                throw new IllegalArgumentException("Input " + i + ": " + e.getMessage());
+            }
+        }
+
+        admit(client, inputs.length);
+        JobBatch batch = new JobBatch(client, inputs.length);
+        try
+        {
+            batch.prepare(inputs, args);
+        }
+        catch (IOException | RuntimeException e)
+        {
+            release(client, inputs.length, true);
+            throw e;
+        }
+
+        batches.put(batch.batchId, batch);
+        for (String jobId : batch.jobIds)
+        {
+            // called right away for the jobs that finished from the cache
+            JobCompletion.addListener(jobId, batch::finished);
+        }
+        batch.feed();
+        return batch;
+    }
+
+    private static synchronized void admit(String client, int jobs)
+    {
+        int batchesOfClient = unfinishedBatches.getOrDefault(client, 0);
+        if (batchesOfClient >= CvcContext.maxBatchesPerClient)
+        {
+            throw new RejectedExecutionException("The client has " + batchesOfClient + " unfinished batches");
+        }
+        if (unfinishedJobs + jobs > CvcContext.maxBatchJobs)
+        {
+            throw new RejectedExecutionException("The batches have too many unfinished jobs");
+        }
+        unfinishedBatches.put(client, batchesOfClient + 1);
+        unfinishedJobs += jobs;
+    }
+
+    /**
+     * @param jobs          the jobs of the batch that finished
+     * @param batchFinished whether the batch of the client finished
+     */
+    private static synchronized void release(String client, int jobs, boolean batchFinished)
+    {
+        unfinishedJobs -= jobs;
+        if (batchFinished)
+        {
+            unfinishedBatches.computeIfPresent(client, (c, count) -> count > 1 ? count - 1 : null);
+        }
+    }
+
+    /**
+     * Prepares the jobs of the batch, or fails the jobs already prepared if one of them
+     * cannot be, so that no job of the batch is left registered as running
+     */
+    private void prepare(Input[] inputs, List<List<String>> args) throws IOException
+    {
+        try
+        {
+            for (int i = 0; i < inputs.length; i++)
+            {
+                Input input = inputs[i];
+                if (input.jobId == null)
+                {
+                    input.jobId = Constants.tempPrefix + UUID.randomUUID().toString();
+                }
+                jobIds[i] = input.jobId;
+
+                // before the job is registered, so that every registered job is pending
+                JobFeatures features = JobFeatures.of(input.code, input.arguments);
+                JobTask task = CvcClient.prepareJob(input.jobId, input.code, args.get(i), input.useCache);
+                if (task != null)
+                {
+                    synchronized (this)
+                    {
+                        pending.add(new PendingJob(input.jobId, features, task));
+                    }
+                }
+            }
+        }
+        catch (IOException | RuntimeException e)
+        {
+            List<PendingJob> prepared;
+            synchronized (this)
+            {
+                prepared = new ArrayList<>(pending);
+                pending.clear();
+            }
+            for (PendingJob job : prepared)
+            {
+                job.task.cancel(false);
+                JobRegistry.finished(job.jobId, JobRegistry.State.FAILED, null);
+                CvcContext.runningTasks.remove(job.jobId);
+                JobCompletion.notifyListeners(job.jobId);
+            }
+            throw e;
+        }
+    }
+
+    public String getBatchId()
+    {
+        return batchId;
+    }
+
+    public String[] getJobIds()
+    {
+        return jobIds.clone();
+    }
+
+    /**
+     * Submits the pending jobs in order until the queue rejects one
+     */
+    private synchronized void feed()
+    {
+        JobScheduler scheduler = CvcContext.getJobScheduler();
+        while (!pending.isEmpty())
+        {
+            PendingJob job = pending.peek();
+            // a job cancelled while it was pending already finished
+            if (!job.task.isCancelled())
+            {
+                try
+                {
+                    scheduler.submit(job.jobId, client, job.features, job.task);
+                }
+                catch (RejectedExecutionException e)
+                {
+                    // without a job of the batch in the queue, no finished job feeds the batch
+                    if (submitted.isEmpty() && !retryScheduled)
+                    {
+                        retryScheduled = true;
+                        CvcContext.getTaskScheduler().schedule(this::retry, scheduler.getRetryAfter(),
+                                TimeUnit.SECONDS);
+                    }
+                    return;
+                }
+                submitted.add(job.jobId);
+            }
+            pending.poll();
+        }
+    }
+
+    private void retry()
+    {
+        synchronized (this)
+        {
+            retryScheduled = false;
+        }
+        feed();
+    }
+
+    private void finished(String jobId)
+    {
+        boolean last;
+        synchronized (this)
+        {
+            submitted.remove(jobId);
+            unfinished--;
+            last = unfinished == 0;
+        }
+        release(client, 1, last);
+
+        if (last)
+        {
+            CvcContext.getTaskScheduler().schedule(() -> batches.remove(batchId), RETENTION, TimeUnit.MINUTES);
+        }
+        else
+        {
+            feed();
+        }
+    }
+
+    public BatchStatus getStatus()
+    {
+        BatchStatus status = new BatchStatus();
+        status.batchId = batchId;
+        status.total = jobIds.length;
+        synchronized (this)
+        {
+            for (String jobId : jobIds)
+            {
+                JobRegistry.Entry entry = JobRegistry.get(jobId);
+                if (entry == null || entry.getState().isFinal())
+                {
+                    status.finished++;
+                }
+                else if (entry.getState() == JobRegistry.State.RUNNING)
+                {
+                    status.running++;
+                }
+                else
+                {
+                    status.queued++;
+                }
+            }
+            status.batchFinished = unfinished == 0;
+        }
+        return status;
+    }
+
+    /**
+     * Sends the results of each job of the batch when it finishes, in the order the jobs
+     * finish, and closes the sink after the last one
+     */
+    public void streamResults(Sink sink)
+    {
+        new ResultsStream(sink).start();
+    }
+
+    private class ResultsStream
+    {
+        private final Sink sink;
+        private final Consumer<String> listener = this::schedule;
+
+        // guarded by this
+        private int remaining = jobIds.length;
+        private boolean stopped;
+
+        ResultsStream(Sink sink)
+        {
+            this.sink = sink;
+        }
+
+        void start()
+        {
+            if (jobIds.length == 0)
+            {
+                sink.close();
+                return;
+            }
+            for (String jobId : jobIds)
+            {
+                JobCompletion.addListener(jobId, listener);
+            }
+        }
+
+        // listeners must not block, so the results are read and sent on the streaming service
+        private void schedule(String jobId)
+        {
+            CvcContext.getStreamingService().execute(() -> send(jobId));
+        }
+
+        private synchronized void send(String jobId)
+        {
+            if (stopped)
+            {
+                return;
+            }
+            try
+            {
+                RawResults results = CvcClient.getRawResults(jobId);
+                results.jobId = jobId;
+                results.jobFinished = true;
+                sink.send(results);
+
+                remaining--;
+                if (remaining == 0)
+                {
+                    stopped = true;
+                    sink.close();
+                }
+            }
+            catch (Exception e)
+            {
+                log.warn("streaming batch " + batchId + " caught exception: " + e, e);
+                stopped = true;
+                for (String id : jobIds)
+                {
+                    JobCompletion.removeListener(id, listener);
+                }
+                sink.close();
+            }
+        }
+    }
+}
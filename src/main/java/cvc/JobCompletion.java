@@ -0,0 +1,95 @@
+/* This file is part of the cvc-webservices.
+ *  Copyright (c) 2018 by the Board of Trustees of the University of Iowa
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you
+ *  may not use this file except in compliance with the License.  You
+ *  may obtain a copy of the License at
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package cvc;
+
+import org.apache.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Consumer;
+
+/**
+ * A registry of listeners that are notified once when a job finishes.
+ * Listeners are invoked on the thread that finishes (or cancels) the job,
+ * so they should not block.
+ */
+
+public class JobCompletion
+{
+    private static final Logger log = Logger.getLogger(JobCompletion.class);
+
+    private static final ConcurrentMap<String, List<Consumer<String>>> listeners =
+            new ConcurrentHashMap<>();
+
+    /**
+     * Registers a listener for the given job. If the job is not running, the listener is
+     * invoked immediately.
+     *
+     * @param jobId    the id of the job
+     * @param listener called with the job id when the job finishes
+     */
+    public static void addListener(String jobId, Consumer<String> listener)
+    {
+        listeners.compute(jobId, (id, list) ->
+        {
+            if (list == null)
+            {
+                list = new ArrayList<>();
+            }
+            list.add(listener);
+            return list;
+        });
+
+        // the job may have finished before the listener was registered
+        if (JobRegistry.isFinished(jobId))
+        {
+            notifyListeners(jobId);
+        }
+    }
+
+    public static void removeListener(String jobId, Consumer<String> listener)
+    {
+        listeners.computeIfPresent(jobId, (id, list) ->
+        {
+            list.remove(listener);
+            return list.isEmpty() ? null : list;
+        });
+    }
+
+    /**
+     * Invokes and removes all listeners registered for the given job.
+     * Each listener is invoked at most once even if this method is called several times.
+     */
+    public static void notifyListeners(String jobId)
+    {
+        List<Consumer<String>> list = listeners.remove(jobId);
+        if (list == null)
+        {
+            return;
+        }
+
+        for (Consumer<String> listener : list)
+        {
+            try
+            {
+                listener.accept(jobId);
+            }
+            catch (Exception e)
+            {
+                log.warn("listener of job " + jobId + " caught exception: " + e, e);
+            }
+        }
+    }
+}
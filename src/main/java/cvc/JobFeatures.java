@@ -0,0 +1,98 @@
+/* This file is part of the cvc-webservices.
+ *  Copyright (c) 2018 by the Board of Trustees of the University of Iowa
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you
+ *  may not use this file except in compliance with the License.  You
+ *  may obtain a copy of the License at
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package cvc;
+
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * The properties of a job that are used to predict its runtime from the runtimes of
+ * earlier jobs: the input language, the logic, the code size and the options given.
+ */
+
+public class JobFeatures
+{
+    private static final String SET_LOGIC = "set-logic";
+    private static final String NONE = "none";
+
+    public final String lang;
+    public final String logic;
+    public final int sizeBucket; // log2 of the code size
+    public final String options;
+
+    public JobFeatures(String lang, String logic, int sizeBucket, String options)
+    {
+        this.lang = lang;
+        this.logic = logic;
+        this.sizeBucket = sizeBucket;
+        this.options = options;
+    }
+
+    /**
+     * @param code      the code of the job
+     * @param arguments the cvc arguments of the job
+     */
+    public static JobFeatures of(String code, Map<String, String> arguments)
+    {
+        String lang = arguments.getOrDefault("lang", NONE);
+        if (Util.isNullOrEmpty(lang))
+        {
+            lang = NONE;
+        }
+
+        // the names of the options, their values rarely change the runtime class of a job
+        TreeSet<String> options = new TreeSet<>(arguments.keySet());
+        options.remove("lang");
+        options.remove("output-lang");
+
+        int length = code == null ? 0 : code.length();
+        int sizeBucket = 32 - Integer.numberOfLeadingZeros(length);
+
+        return new JobFeatures(lang, getLogic(code), sizeBucket, String.join(",", options));
+    }
+
+    /**
+     * @return the logic of an SMT-LIB or SyGuS script, or "none" if it does not set one
+     */
+    private static String getLogic(String code)
+    {
+        int index = code == null ? -1 : code.indexOf(SET_LOGIC);
+        if (index < 0)
+        {
+            return NONE;
+        }
+
+        int start = index + SET_LOGIC.length();
+        while (start < code.length() && Character.isWhitespace(code.charAt(start)))
+        {
+            start++;
+        }
+        int end = start;
+        while (end < code.length() && (Character.isLetterOrDigit(code.charAt(end)) || code.charAt(end) == '_'))
+        {
+            end++;
+        }
+        return end > start ? code.substring(start, end) : NONE;
+    }
+
+    /**
+     * @return the keys under which runtimes are recorded, from the most to the least specific
+     */
+    public String[] getKeys()
+    {
+        String languageKey = lang;
+        String logicKey = languageKey + "|" + logic;
+        String sizeKey = logicKey + "|" + sizeBucket;
+        return new String[]{sizeKey + "|" + options, sizeKey, logicKey, languageKey};
+    }
+}
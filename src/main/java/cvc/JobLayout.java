@@ -0,0 +1,251 @@
+/* This file is part of the cvc-webservices.
+ *  Copyright (c) 2018 by the Board of Trustees of the University of Iowa
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you
+ *  may not use this file except in compliance with the License.  You
+ *  may obtain a copy of the License at
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package cvc;
+
+import org.apache.log4j.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * Where the directories of the jobs are under the jobs directory, so that no directory
+ * holds more than a day of jobs spread over 256 shards:
+ * <pre>
+ * by-date/20181231/3f/temp_...   temporary jobs, in the bucket of the day they were created
+ * by-id/a7/myJob                 the other jobs, which are kept
+ * </pre>
+ * The shard is the low byte of the hash code of the job id. Finding a temporary job
+ * probes the day buckets from the newest, and the directories found are cached.
+ * Jobs in the flat layout of earlier versions, directly under the jobs directory, are found
+ * there until {@link #migrate()} moved them.
+ */
+
+public class JobLayout
+{
+    private static final Logger log = Logger.getLogger(JobLayout.class);
+
+    public static final String BY_DATE = "by-date";
+    public static final String BY_ID = "by-id";
+
+    private static final DateTimeFormatter DAY = DateTimeFormatter.BASIC_ISO_DATE;
+
+    private static final int CACHE_SIZE = 16384;
+
+    private final File root;
+    private final File byDate;
+    private final File byId;
+
+    // the day buckets, newest first
+    private final NavigableSet<String> days = new ConcurrentSkipListSet<>(Comparator.reverseOrder());
+
+    // the most recently used directories of jobs that exist
+    private final Map<String, File> cache = Collections.synchronizedMap(
+            new LinkedHashMap<String, File>(1024, 0.75f, true)
+            {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, File> eldest)
+                {
+                    return size() > CACHE_SIZE;
+                }
+            });
+
+    public JobLayout(File root)
+    {
+        this.root = root;
+        this.byDate = new File(root, BY_DATE);
+        this.byId = new File(root, BY_ID);
+        byDate.mkdirs();
+        byId.mkdirs();
+
+        String[] names = byDate.list();
+        if (names != null)
+        {
+            Collections.addAll(days, names);
+        }
+    }
+
+    /**
+     * @return the directory of the job if it exists, otherwise the directory it is created in
+     */
+    public File getDirectory(String jobId)
+    {
+        File directory = cache.get(jobId);
+        if (directory != null)
+        {
+            return directory;
+        }
+        directory = find(jobId);
+        if (directory != null)
+        {
+            cache.put(jobId, directory);
+            return directory;
+        }
+        return place(jobId, today());
+    }
+
+    /**
+     * Creates the directory of a job if it does not exist
+     */
+    public File create(String jobId)
+    {
+        File directory = getDirectory(jobId);
+        if (!directory.exists())
+        {
+            days.add(directory.getParentFile().getParentFile().getName());
+            directory.mkdirs();
+        }
+        cache.put(jobId, directory);
+        return directory;
+    }
+
+    private File find(String jobId)
+    {
+        if (isTemporary(jobId))
+        {
+            for (String day : days)
+            {
+                File directory = place(jobId, day);
+                if (directory.exists())
+                {
+                    return directory;
+                }
+            }
+        }
+        else
+        {
+            File directory = place(jobId, null);
+            if (directory.exists())
+            {
+                return directory;
+            }
+        }
+
+        // not migrated yet
+        File flat = new File(root, jobId);
+        return flat.exists() ? flat : null;
+    }
+
+    /**
+     * @param day the day bucket of a temporary job
+     */
+    private File place(String jobId, String day)
+    {
+        String shard = String.format("%02x", jobId.hashCode() & 0xff);
+        File parent = isTemporary(jobId) ? new File(new File(byDate, day), shard) : new File(byId, shard);
+        return new File(parent, jobId);
+    }
+
+    private static boolean isTemporary(String jobId)
+    {
+        return jobId.startsWith(Constants.tempPrefix);
+    }
+
+    private static String today()
+    {
+        return LocalDate.now().format(DAY);
+    }
+
+    /**
+     * @return the day buckets, oldest first
+     */
+    public List<String> getDays()
+    {
+        return new ArrayList<>(days.descendingSet());
+    }
+
+    public File getDayDirectory(String day)
+    {
+        return new File(byDate, day);
+    }
+
+    /**
+     * Forgets the directory of a job that was deleted, and deletes its shard and its day
+     * bucket once they are empty
+     */
+    public void deleted(String jobId, File directory)
+    {
+        cache.remove(jobId);
+        File shard = directory.getParentFile();
+        File bucket = shard.getParentFile();
+        // deleting a directory fails unless it is empty
+        if (bucket.getParentFile().equals(byDate) && shard.delete() && !bucket.getName().equals(today()) &&
+                bucket.delete())
+        {
+            days.remove(bucket.getName());
+        }
+    }
+
+    /**
+     * Moves the jobs of the flat layout into their shards, the temporary ones in the bucket
+     * of the day they were last modified. Running jobs are left where they are, and are
+     * moved by the next migration.
+     */
+    public void migrate()
+    {
+        File[] files = root.listFiles(file -> file.isDirectory() &&
+                !file.getName().equals(BY_DATE) && !file.getName().equals(BY_ID));
+        if (files == null || files.length == 0)
+        {
+            return;
+        }
+
+        log.info("moving " + files.length + " jobs of " + root + " into shards");
+        int moved = 0;
+        for (File file : files)
+        {
+            String jobId = file.getName();
+            if (CvcContext.runningTasks.containsKey(jobId))
+            {
+                continue;
+            }
+            String day = Instant.ofEpochMilli(file.lastModified()).atZone(ZoneId.systemDefault())
+                    .toLocalDate().format(DAY);
+            File target = place(jobId, day);
+            if (target.exists())
+            {
+                log.warn("not moving job " + jobId + ", which is also at " + target);
+                continue;
+            }
+            try
+            {
+                target.getParentFile().mkdirs();
+                if (isTemporary(jobId))
+                {
+                    days.add(day);
+                }
+                Files.move(file.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE);
+                cache.remove(jobId);
+                moved++;
+            }
+            catch (IOException e)
+            {
+                log.error("moving job " + jobId + " says " + e.getMessage(), e);
+            }
+        }
+        log.info("moved " + moved + " jobs into shards");
+    }
+}
@@ -0,0 +1,231 @@
+/* This file is part of the cvc-webservices.
+ *  Copyright (c) 2018 by the Board of Trustees of the University of Iowa
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you
+ *  may not use this file except in compliance with the License.  You
+ *  may obtain a copy of the License at
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package cvc;
+
+import cvc.Contracts.JobStatus;
+import org.apache.commons.io.output.ProxyOutputStream;
+
+import java.io.OutputStream;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The state of the jobs submitted since the service started, kept in memory so that the
+ * status of a job is answered without reading the jobs directory.
+ * A job is QUEUED until its task starts, then RUNNING until it reaches one of the final
+ * states. A final state never changes, e.g. a cancelled job whose process is still being
+ * killed stays CANCELLED. A job is kept for {@link CvcContext#statusRetentionMinutes} after it finished.
+ * Jobs of a previous run of the service are not in the registry, and for them the state is
+ * inferred from the running tasks as before.
+ */
+
+public class JobRegistry
+{
+    public enum State
+    {
+        QUEUED, RUNNING, COMPLETED, TIMED_OUT, CANCELLED, FAILED;
+
+        public boolean isFinal()
+        {
+            return this != QUEUED && this != RUNNING;
+        }
+    }
+
+    public static class Entry
+    {
+        private final String jobId;
+        private final long queued = System.currentTimeMillis();
+        private final AtomicLong stdoutLength = new AtomicLong();
+        private final AtomicLong stderrLength = new AtomicLong();
+
+        // guarded by this
+        private State state = State.QUEUED;
+        private Long started;
+        private Long finished;
+        private Integer exitCode;
+
+        private Entry(String jobId)
+        {
+            this.jobId = jobId;
+        }
+
+        public synchronized State getState()
+        {
+            return state;
+        }
+
+        /**
+         * @return how long the job ran in milliseconds, without the time it was queued, or null
+         *         if it did not start or has not finished
+         */
+        public synchronized Long getRuntime()
+        {
+            return started == null || finished == null ? null : finished - started;
+        }
+
+        public long getStdoutLength()
+        {
+            return stdoutLength.get();
+        }
+
+        public long getStderrLength()
+        {
+            return stderrLength.get();
+        }
+
+        /**
+         * @return false if the job is already in a final state or the transition goes back
+         */
+        private synchronized boolean transition(State to, Integer exitCode)
+        {
+            if (state.isFinal() || to == State.QUEUED || (to == State.RUNNING && state == State.RUNNING))
+            {
+                return false;
+            }
+            long now = System.currentTimeMillis();
+            if (to == State.RUNNING)
+            {
+                started = now;
+            }
+            else
+            {
+                finished = now;
+                this.exitCode = exitCode;
+            }
+            state = to;
+            return true;
+        }
+
+        private synchronized JobStatus toStatus()
+        {
+            JobStatus status = new JobStatus();
+            status.jobId = jobId;
+            status.state = state.name();
+            status.jobFinished = state.isFinal();
+            status.queued = queued;
+            status.started = started;
+            status.finished = finished;
+            status.exitCode = exitCode;
+            status.stdoutLength = stdoutLength.get();
+            status.stderrLength = stderrLength.get();
+            return status;
+        }
+    }
+
+    private static final ConcurrentMap<String, Entry> jobs = new ConcurrentHashMap<>();
+
+    /**
+     * Registers a job as QUEUED, replacing a job with the same id that was submitted before
+     */
+    public static Entry register(String jobId)
+    {
+        Entry entry = new Entry(jobId);
+        jobs.put(jobId, entry);
+        return entry;
+    }
+
+    /**
+     * @return the job, or null if it was not submitted since the service started or was removed
+     */
+    public static Entry get(String jobId)
+    {
+        return jobs.get(jobId);
+    }
+
+    /**
+     * Forgets a job that was never submitted, e.g. because the queue was full
+     */
+    public static void remove(String jobId)
+    {
+        jobs.remove(jobId);
+    }
+
+    public static void started(String jobId)
+    {
+        Entry entry = jobs.get(jobId);
+        if (entry != null)
+        {
+            entry.transition(State.RUNNING, null);
+        }
+    }
+
+    /**
+     * Moves a job to a final state, unless it is already in one
+     *
+     * @param state    the final state
+     * @param exitCode the exit code of the process of the job, or null
+     */
+    public static void finished(String jobId, State state, Integer exitCode)
+    {
+        Entry entry = jobs.get(jobId);
+        if (entry != null && entry.transition(state, exitCode))
+        {
+            CvcContext.getTaskScheduler().schedule(() -> jobs.remove(jobId, entry),
+                    CvcContext.statusRetentionMinutes, TimeUnit.MINUTES);
+        }
+    }
+
+    /**
+     * @return true if the job is in a final state, or is not in the registry and is not running
+     */
+    public static boolean isFinished(String jobId)
+    {
+        Entry entry = jobs.get(jobId);
+        return entry != null ? entry.getState().isFinal() : !CvcContext.runningTasks.containsKey(jobId);
+    }
+
+    /**
+     * @return the status of the job, or null if it is not in the registry
+     */
+    public static JobStatus getStatus(String jobId)
+    {
+        Entry entry = jobs.get(jobId);
+        if (entry == null)
+        {
+            return null;
+        }
+        JobStatus status = entry.toStatus();
+        if (State.QUEUED.name().equals(status.state))
+        {
+            int position = CvcContext.getJobScheduler().getPosition(jobId);
+            // 0 while the job waits in its batch rather than in the queue
+            status.queuePosition = position > 0 ? position : null;
+        }
+        return status;
+    }
+
+    /**
+     * Wraps an output of a job, so that the registry knows how many bytes were written
+     *
+     * @param stdout true for the standard output, false for the standard error
+     */
+    public static OutputStream count(String jobId, OutputStream output, boolean stdout)
+    {
+        Entry entry = jobs.get(jobId);
+        if (entry == null)
+        {
+            return output;
+        }
+        AtomicLong length = stdout ? entry.stdoutLength : entry.stderrLength;
+        return new ProxyOutputStream(output)
+        {
+            @Override
+            protected void afterWrite(int n)
+            {
+                length.addAndGet(n);
+            }
+        };
+    }
+}
@@ -0,0 +1,382 @@
+/* This file is part of the cvc-webservices.
+ *  Copyright (c) 2018 by the Board of Trustees of the University of Iowa
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you
+ *  may not use this file except in compliance with the License.  You
+ *  may obtain a copy of the License at
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package cvc;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.log4j.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Deletes the oldest temporary jobs on disk while they take more than a size budget or are
+ * older than an age budget. The jobs are indexed by creation time with their sizes, which
+ * are updated while their files are written, so the budgets are enforced without walking the
+ * jobs directory.
+ * The index is saved in the jobs directory now and then and when the service stops, and
+ * loaded when it starts. Only the day buckets written since the index was saved are then
+ * walked, and the whole jobs directory only when there is no index, e.g. after an upgrade.
+ * Saved jobs, whose ids do not start with {@link Constants#tempPrefix}, and unfinished jobs
+ * are never deleted.
+ */
+
+public class JobRetention
+{
+    private static final Logger log = Logger.getLogger(JobRetention.class);
+
+    public static final String INDEX_FILE = "retention-index.tsv";
+
+    private static final long SAVE_PERIOD = TimeUnit.MINUTES.toMillis(10);
+
+    private static class Job
+    {
+        final String jobId;
+        final File directory;
+        final long created;
+        final Map<String, Long> files = new HashMap<>();
+        long bytes;
+
+        Job(String jobId, File directory, long created)
+        {
+            this.jobId = jobId;
+            this.directory = directory;
+            this.created = created;
+        }
+    }
+
+    private final JobLayout layout;
+    private final File indexFile;
+    private final long maxBytes; // 0 for no limit
+    private final long maxAge; // milliseconds, 0 for no limit
+
+    // guarded by this
+    private final Map<String, Job> jobs = new HashMap<>();
+    private final TreeSet<Job> order = new TreeSet<>(
+            Comparator.<Job>comparingLong(job -> job.created).thenComparing(job -> job.jobId));
+    private long totalBytes;
+    private boolean changed;
+    private long saved;
+
+    private final AtomicBoolean enforcing = new AtomicBoolean();
+
+    /**
+     * @param root     the jobs directory, where the index is saved
+     * @param maxBytes the size budget of the temporary jobs, or 0
+     * @param maxAge   the age budget of the temporary jobs in milliseconds, or 0
+     */
+    public JobRetention(JobLayout layout, File root, long maxBytes, long maxAge)
+    {
+        this.layout = layout;
+        this.indexFile = new File(root, INDEX_FILE);
+        this.maxBytes = maxBytes;
+        this.maxAge = maxAge;
+    }
+
+    /**
+     * Adds the directory of a job that was just created
+     */
+    public void created(String jobId, File directory)
+    {
+        if (!jobId.startsWith(Constants.tempPrefix))
+        {
+            return;
+        }
+        synchronized (this)
+        {
+            if (!jobs.containsKey(jobId))
+            {
+                add(new Job(jobId, directory, System.currentTimeMillis()));
+            }
+        }
+    }
+
+    /**
+     * Updates the size of a job after one of its files was written
+     */
+    public void written(String jobId, File file)
+    {
+        written(jobId, file.getName(), file.length());
+    }
+
+    /**
+     * Updates the size of a job while one of its files is written
+     *
+     * @param length the length of the file so far
+     */
+    public void written(String jobId, String name, long length)
+    {
+        boolean exceeded;
+        synchronized (this)
+        {
+            Job job = jobs.get(jobId);
+            if (job == null)
+            {
+                return;
+            }
+            Long previous = job.files.put(name, length);
+            long growth = length - (previous == null ? 0 : previous);
+            job.bytes += growth;
+            totalBytes += growth;
+            changed = true;
+            exceeded = maxBytes > 0 && totalBytes > maxBytes;
+        }
+        if (exceeded)
+        {
+            // deleted on the task scheduler, so that writing an output never waits for it
+            CvcContext.getTaskScheduler().execute(this::enforce);
+        }
+    }
+
+    public synchronized long getTotalBytes()
+    {
+        return totalBytes;
+    }
+
+    /**
+     * Loads the saved index, then indexes the temporary jobs of the day buckets written since
+     * it was saved, or of all the day buckets if there is no index
+     */
+    public void load()
+    {
+        String since = null;
+        if (indexFile.exists())
+        {
+            try
+            {
+                since = read();
+                log.info("loaded the index of " + getTotalBytes() + " bytes of jobs before " + since);
+            }
+            catch (IOException | RuntimeException e)
+            {
+                log.error("loading " + indexFile + " says " + e.getMessage(), e);
+            }
+        }
+        index(since);
+    }
+
+    /**
+     * Reads the saved index, except the jobs of the day bucket it was saved in, which is walked
+     *
+     * @return the day bucket the index was saved in
+     */
+    private String read() throws IOException
+    {
+        List<String> lines = Files.readAllLines(indexFile.toPath(), Charset.defaultCharset());
+        LocalDate day = Instant.ofEpochMilli(Long.parseLong(lines.get(0))).atZone(ZoneId.systemDefault())
+                .toLocalDate();
+        long dayStarted = day.atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        for (String line : lines.subList(1, lines.size()))
+        {
+            // jobId, created, directory, then the name and the length of each file
+            String[] fields = line.split("\t");
+            Job job = new Job(fields[0], new File(fields[2]), Long.parseLong(fields[1]));
+            if (job.created >= dayStarted)
+            {
+                continue;
+            }
+            for (int i = 3; i + 1 < fields.length; i += 2)
+            {
+                long length = Long.parseLong(fields[i + 1]);
+                job.files.put(fields[i], length);
+                job.bytes += length;
+            }
+            synchronized (this)
+            {
+                if (!jobs.containsKey(job.jobId))
+                {
+                    add(job);
+                }
+            }
+        }
+        return day.format(DateTimeFormatter.BASIC_ISO_DATE);
+    }
+
+    /**
+     * Saves the index if it changed and was not saved for a while
+     */
+    public void saveIfChanged()
+    {
+        synchronized (this)
+        {
+            if (!changed || System.currentTimeMillis() - saved < SAVE_PERIOD)
+            {
+                return;
+            }
+        }
+        save();
+    }
+
+    /**
+     * Saves the index to the jobs directory, replacing the saved index at once
+     */
+    public void save()
+    {
+        StringBuilder builder = new StringBuilder();
+        synchronized (this)
+        {
+            saved = System.currentTimeMillis();
+            changed = false;
+            builder.append(saved).append('\n');
+            for (Job job : order)
+            {
+                builder.append(job.jobId).append('\t').append(job.created).append('\t')
+                        .append(job.directory.getAbsolutePath());
+                for (Map.Entry<String, Long> file : job.files.entrySet())
+                {
+                    builder.append('\t').append(file.getKey()).append('\t').append(file.getValue());
+                }
+                builder.append('\n');
+            }
+        }
+        File temporary = new File(indexFile.getParentFile(), INDEX_FILE + ".tmp");
+        try
+        {
+            Files.write(temporary.toPath(), builder.toString().getBytes(Charset.defaultCharset()));
+            Files.move(temporary.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch (IOException e)
+        {
+            log.error("saving " + indexFile + " says " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Indexes the temporary jobs that are on disk but not in the index, e.g. those of a
+     * previous run, one day bucket at a time from the oldest
+     *
+     * @param since the first day bucket to walk, or null to walk them all
+     */
+    private void index(String since)
+    {
+        int indexed = 0;
+        for (String day : layout.getDays())
+        {
+            if (since != null && day.compareTo(since) < 0)
+            {
+                continue;
+            }
+            File[] shards = layout.getDayDirectory(day).listFiles(File::isDirectory);
+            if (shards == null)
+            {
+                continue;
+            }
+            for (File shard : shards)
+            {
+                File[] directories = shard.listFiles(File::isDirectory);
+                if (directories == null)
+                {
+                    continue;
+                }
+                for (File directory : directories)
+                {
+                    Job job = new Job(directory.getName(), directory, directory.lastModified());
+                    File[] files = directory.listFiles();
+                    for (File file : files == null ? new File[0] : files)
+                    {
+                        job.files.put(file.getName(), file.length());
+                        job.bytes += file.length();
+                    }
+                    synchronized (this)
+                    {
+                        if (!jobs.containsKey(job.jobId))
+                        {
+                            add(job);
+                            indexed++;
+                        }
+                    }
+                }
+            }
+        }
+        log.info("indexed " + indexed + " jobs of " + getTotalBytes() + " bytes on disk");
+    }
+
+    private void add(Job job)
+    {
+        jobs.put(job.jobId, job);
+        order.add(job);
+        totalBytes += job.bytes;
+        changed = true;
+    }
+
+    private void remove(Job job)
+    {
+        jobs.remove(job.jobId);
+        order.remove(job);
+        totalBytes -= job.bytes;
+        changed = true;
+    }
+
+    /**
+     * Deletes the oldest finished temporary jobs until both budgets are met
+     */
+    public void enforce()
+    {
+        if (!enforcing.compareAndSet(false, true))
+        {
+            return;
+        }
+        try
+        {
+            Job job;
+            while ((job = nextEviction()) != null)
+            {
+                FileUtils.deleteQuietly(job.directory);
+                layout.deleted(job.jobId, job.directory);
+                Metrics.jobsEvicted.increment();
+            }
+        }
+        finally
+        {
+            enforcing.set(false);
+        }
+    }
+
+    /**
+     * @return the oldest finished job, removed from the index, if a budget is exceeded, otherwise null
+     */
+    private synchronized Job nextEviction()
+    {
+        long oldest = System.currentTimeMillis() - maxAge;
+        for (Job job : order)
+        {
+            boolean tooLarge = maxBytes > 0 && totalBytes > maxBytes;
+            boolean tooOld = maxAge > 0 && job.created < oldest;
+            if (!tooLarge && !tooOld)
+            {
+                return null;
+            }
+            if (!JobRegistry.isFinished(job.jobId))
+            {
+                continue;
+            }
+            remove(job);
+            return job;
+        }
+        return null;
+    }
+}
@@ -0,0 +1,420 @@
+/* This file is part of the cvc-webservices.
+ *  Copyright (c) 2018 by the Board of Trustees of the University of Iowa
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you
+ *  may not use this file except in compliance with the License.  You
+ *  may obtain a copy of the License at
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package cvc;
+
+import cvc.Contracts.QueueStatistics;
+import cvc.Contracts.SchedulingReport;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A bounded queue of jobs in front of the cvc executor service, which only starts them.
+ * At most {@code slots} jobs run at the same time, and at most {@code capacity} jobs wait
+ * for a slot. Jobs submitted while the queue is full are rejected, so that a burst of
+ * requests does not queue without limit.
+ * Each client has its own queue, and free slots are given to the clients in round-robin
+ * order, so that a client submitting many jobs does not delay the jobs of other clients.
+ * A client can have at most {@code maxRunningPerClient} running and
+ * {@code maxQueuedPerClient} queued jobs.
+ * With the cost-aware policy, the queued job with the shortest predicted runtime starts
+ * first instead. Its predicted runtime is reduced by {@code aging} milliseconds for every
+ * millisecond it waits, so that long jobs do not starve.
+ */
+
+public class JobScheduler
+{
+    // weight of the latest sample in the moving averages
+    private static final double SMOOTHING = 0.1;
+
+    public static final String FAIR_POLICY = "fair";
+    public static final String COST_POLICY = "cost";
+
+    private static class QueuedJob
+    {
+        final String jobId;
+        final String client;
+        final JobFeatures features;
+        final long predicted; // milliseconds
+        final JobTask task;
+        final long submitted = System.currentTimeMillis();
+
+        QueuedJob(String jobId, String client, JobFeatures features, long predicted, JobTask task)
+        {
+            this.jobId = jobId;
+            this.client = client;
+            this.features = features;
+            this.predicted = predicted;
+            this.task = task;
+        }
+
+        double getScore(long now, double aging)
+        {
+            return predicted - aging * (now - submitted);
+        }
+    }
+
+    private final ExecutorService executorService;
+    private final int slots;
+    private final int capacity;
+    private final int maxRunningPerClient;
+    private final int maxQueuedPerClient;
+    private final String policy;
+    private final double aging;
+    private final RuntimeHistory history = new RuntimeHistory();
+
+    // guarded by this
+    private final Map<String, ArrayDeque<QueuedJob>> queues = new HashMap<>();
+    // clients with queued jobs in the order they are served
+    private final ArrayDeque<String> rotation = new ArrayDeque<>();
+    private final Map<String, Integer> runningPerClient = new HashMap<>();
+    private int queued;
+    private int running;
+    private long rejected;
+    private double averageWait; // milliseconds
+    private double averageRuntime; // milliseconds
+
+    /**
+     * @param executorService the service that starts the jobs
+     * @param slots           the maximum number of jobs running at the same time
+     * @param capacity        the maximum number of jobs waiting for a slot
+     * @param maxRunningPerClient the maximum number of running jobs of one client
+     * @param maxQueuedPerClient  the maximum number of jobs of one client waiting for a slot
+     * @param initialRuntime  the expected runtime of a job in milliseconds before any job finished
+     * @param policy          {@link #FAIR_POLICY} or {@link #COST_POLICY}
+     * @param aging           how fast waiting reduces the predicted runtime in the cost-aware policy
+     */
+    public JobScheduler(ExecutorService executorService, int slots, int capacity,
+                        int maxRunningPerClient, int maxQueuedPerClient, long initialRuntime,
+                        String policy, double aging)
+    {
+        this.executorService = executorService;
+        this.slots = slots;
+        this.capacity = capacity;
+        this.maxRunningPerClient = maxRunningPerClient;
+        this.maxQueuedPerClient = maxQueuedPerClient;
+        this.averageRuntime = initialRuntime;
+        this.policy = policy;
+        this.aging = aging;
+    }
+
+    /**
+     * Queues a job
+     *
+     * @param jobId  the id of the job
+     * @param client the client that submitted the job, e.g. its API key or address
+     * @param features the features used to predict the runtime of the job
+     * @param task   the task that runs the job
+     * @return the position of the job in the queue, where 0 means the job started right away
+     * @throws RejectedExecutionException if the queue or the queue of the client is full
+     */
+    public synchronized int submit(String jobId, String client, JobFeatures features, JobTask task)
+    {
+        long predicted = history.predict(features, (long) averageRuntime);
+        QueuedJob job = new QueuedJob(jobId, client, features, predicted, task);
+        ArrayDeque<QueuedJob> queue = queues.get(client);
+
+        if (running < slots && queue == null && getRunning(client) < maxRunningPerClient)
+        {
+            Metrics.jobsSubmitted.increment();
+            start(job);
+            return 0;
+        }
+
+        if (queued >= capacity)
+        {
+            rejected++;
+            throw new RejectedExecutionException("The job queue is full");
+        }
+
+        if (queue != null && queue.size() >= maxQueuedPerClient)
+        {
+            rejected++;
+            throw new RejectedExecutionException("The job queue of client " + client + " is full");
+        }
+
+        if (queue == null)
+        {
+            queue = new ArrayDeque<>();
+            queues.put(client, queue);
+            rotation.add(client);
+        }
+        queue.add(job);
+        queued++;
+        Metrics.jobsSubmitted.increment();
+        return getPosition(job, client, queue.size() - 1);
+    }
+
+    private int getRunning(String client)
+    {
+        return runningPerClient.getOrDefault(client, 0);
+    }
+
+    /**
+     * Removes a job that has not started from the queue
+     *
+     * @return true if the job was queued
+     */
+    public synchronized boolean remove(String jobId)
+    {
+        for (Map.Entry<String, ArrayDeque<QueuedJob>> entry : queues.entrySet())
+        {
+            Iterator<QueuedJob> iterator = entry.getValue().iterator();
+            while (iterator.hasNext())
+            {
+                if (iterator.next().jobId.equals(jobId))
+                {
+                    iterator.remove();
+                    queued--;
+                    if (entry.getValue().isEmpty())
+                    {
+                        queues.remove(entry.getKey());
+                        rotation.remove(entry.getKey());
+                    }
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the position of the job in the queue starting from 1, or 0 if the job is not queued
+     */
+    public synchronized int getPosition(String jobId)
+    {
+        for (Map.Entry<String, ArrayDeque<QueuedJob>> entry : queues.entrySet())
+        {
+            int index = 0;
+            for (QueuedJob job : entry.getValue())
+            {
+                if (job.jobId.equals(jobId))
+                {
+                    return getPosition(job, entry.getKey(), index);
+                }
+                index++;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * @param job    a queued job
+     * @param client the client of the job
+     * @param index  the index of the job in the queue of its client
+     * @return the number of jobs that start before the job, plus one
+     */
+    private int getPosition(QueuedJob job, String client, int index)
+    {
+        if (COST_POLICY.equals(policy))
+        {
+            long now = System.currentTimeMillis();
+            double score = job.getScore(now, aging);
+            int position = 1;
+            for (ArrayDeque<QueuedJob> queue : queues.values())
+            {
+                for (QueuedJob other : queue)
+                {
+                    if (other.getScore(now, aging) < score)
+                    {
+                        position++;
+                    }
+                }
+            }
+            return position;
+        }
+
+        // round-robin order
+        int position = index + 1;
+        boolean before = true;
+        for (String other : rotation)
+        {
+            if (other.equals(client))
+            {
+                before = false;
+                continue;
+            }
+            // clients ahead in the rotation are served once more in the round of the job
+            int rounds = before ? index + 1 : index;
+            position += Math.min(queues.get(other).size(), rounds);
+        }
+        return position;
+    }
+
+    /**
+     * @param position the position of a job in the queue starting from 1
+     * @return the expected time in milliseconds until a job at the given position starts
+     */
+    public synchronized long estimateWait(int position)
+    {
+        if (position <= 0)
+        {
+            return 0;
+        }
+        // every round of slots finishing moves the queue forward by slots jobs
+        int rounds = (position + slots - 1) / slots;
+        return (long) (rounds * averageRuntime);
+    }
+
+    /**
+     * @return the expected number of seconds until the queue has room for another job
+     */
+    public synchronized long getRetryAfter()
+    {
+        return Math.max(1, (long) Math.ceil(averageRuntime / slots / 1000));
+    }
+
+    private void start(QueuedJob job)
+    {
+        running++;
+        runningPerClient.merge(job.client, 1, Integer::sum);
+        long started = System.currentTimeMillis();
+        averageWait += SMOOTHING * ((started - job.submitted) - averageWait);
+        Metrics.queueWait.record(started - job.submitted, TimeUnit.MILLISECONDS);
+
+        // the task only starts the job, which frees its slot once its process is gone
+        job.task.whenFinished(() -> finished(job, started, System.currentTimeMillis() - started));
+        executorService.execute(job.task);
+    }
+
+    private synchronized void finished(QueuedJob job, long started, long runtime)
+    {
+        running--;
+        runningPerClient.computeIfPresent(job.client, (client, count) -> count > 1 ? count - 1 : null);
+        // cancelled, failed and timed out jobs say nothing about how long a job of their kind runs
+        JobRegistry.Entry entry = JobRegistry.get(job.jobId);
+        if (entry != null && entry.getState() == JobRegistry.State.COMPLETED)
+        {
+            averageRuntime += SMOOTHING * (runtime - averageRuntime);
+            history.record(job.features, job.submitted, started, runtime, job.predicted);
+        }
+
+        if (COST_POLICY.equals(policy))
+        {
+            dispatchByCost();
+        }
+        else
+        {
+            dispatch();
+        }
+    }
+
+    /**
+     * Starts the queued jobs with the lowest aged predicted runtime while there are free slots,
+     * skipping the clients that already run their maximum number of jobs
+     */
+    private void dispatchByCost()
+    {
+        while (running < slots)
+        {
+            long now = System.currentTimeMillis();
+            QueuedJob selected = null;
+            for (ArrayDeque<QueuedJob> queue : queues.values())
+            {
+                for (QueuedJob job : queue)
+                {
+                    if (getRunning(job.client) < maxRunningPerClient &&
+                            (selected == null || job.getScore(now, aging) < selected.getScore(now, aging)))
+                    {
+                        selected = job;
+                    }
+                }
+            }
+
+            if (selected == null)
+            {
+                return;
+            }
+
+            remove(selected.jobId);
+            if (!selected.task.isCancelled())
+            {
+                start(selected);
+            }
+        }
+    }
+
+    /**
+     * Starts queued jobs while there are free slots, visiting the clients in round-robin order
+     * and skipping the clients that already run their maximum number of jobs
+     */
+    private void dispatch()
+    {
+        int skipped = 0;
+        while (running < slots && skipped < rotation.size())
+        {
+            String client = rotation.poll();
+            ArrayDeque<QueuedJob> queue = queues.get(client);
+
+            if (getRunning(client) >= maxRunningPerClient)
+            {
+                rotation.add(client);
+                skipped++;
+                continue;
+            }
+
+            QueuedJob job = queue.poll();
+            queued--;
+            if (queue.isEmpty())
+            {
+                queues.remove(client);
+            }
+            else
+            {
+                rotation.add(client);
+            }
+
+            if (!job.task.isCancelled())
+            {
+                start(job);
+            }
+            skipped = 0;
+        }
+    }
+
+    public SchedulingReport getSchedulingReport()
+    {
+        return history.getReport(policy, slots, aging);
+    }
+
+    public synchronized QueueStatistics getStatistics()
+    {
+        QueueStatistics statistics = new QueueStatistics();
+        statistics.queued = queued;
+        statistics.running = running;
+        statistics.slots = slots;
+        statistics.capacity = capacity;
+        statistics.rejected = rejected;
+        statistics.averageWait = (long) averageWait;
+        statistics.averageRuntime = (long) averageRuntime;
+
+        long oldest = System.currentTimeMillis();
+        for (ArrayDeque<QueuedJob> queue : queues.values())
+        {
+            oldest = Math.min(oldest, queue.peek().submitted);
+        }
+        statistics.oldestWait = System.currentTimeMillis() - oldest;
+
+        Set<String> clients = new HashSet<>(queues.keySet());
+        clients.addAll(runningPerClient.keySet());
+        statistics.clients = clients.size();
+        return statistics;
+    }
+}
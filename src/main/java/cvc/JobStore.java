@@ -0,0 +1,75 @@
+/* This file is part of the cvc-webservices.
+ *  Copyright (c) 2018 by the Board of Trustees of the University of Iowa
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you
+ *  may not use this file except in compliance with the License.  You
+ *  may obtain a copy of the License at
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package cvc;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Stores the code and the outputs of jobs.
+ * The outputs are named by {@link Constants#RESULTS_FILE} and {@link Constants#ERRORS_FILE}.
+ */
+
+public interface JobStore
+{
+    /**
+     * Stores the code of a job, replacing the code and the outputs of a previous run
+     */
+    void create(String jobId, String code) throws IOException;
+
+    /**
+     * @return true if the code or the outputs of the job are stored
+     */
+    boolean exists(String jobId);
+
+    String getCode(String jobId) throws IOException;
+
+    /**
+     * Opens an output of a job for writing, discarding what was written before
+     */
+    OutputStream openOutput(String jobId, String name) throws IOException;
+
+    /**
+     * Reads part of an output of a job
+     *
+     * @param offset    the position of the first byte to read
+     * @param maxLength the maximum number of bytes to read
+     * @return the bytes read, which is empty if the output does not exist or ends before offset
+     */
+    byte[] readOutput(String jobId, String name, long offset, int maxLength) throws IOException;
+
+    /**
+     * @return true if the job is held in memory, in which case cvc reads its code from the standard input
+     */
+    boolean isInMemory(String jobId);
+
+    /**
+     * @return the directory of the job, which exists once the job is on disk
+     */
+    File getDirectory(String jobId);
+
+    /**
+     * Writes the job to its directory if it is held in memory
+     *
+     * @return the directory of the job
+     */
+    File persist(String jobId) throws IOException;
+
+    /**
+     * Deletes the oldest finished temporary jobs while they exceed their size or age budget
+     */
+    void enforceRetention();
+
+    void shutdown();
+}
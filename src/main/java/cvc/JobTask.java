@@ -0,0 +1,121 @@
+/* This file is part of the cvc-webservices.
+ *  Copyright (c) 2018 by the Board of Trustees of the University of Iowa
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you
+ *  may not use this file except in compliance with the License.  You
+ *  may obtain a copy of the License at
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package cvc;
+
+import org.apache.log4j.Logger;
+
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * The task of a job, which starts the job and returns, so that no thread waits for the
+ * job while its process runs. The job calls {@link #complete()} once it finished and its
+ * process is gone, which completes the future, unless it was cancelled, and frees the slot
+ * of the job in the {@link JobScheduler}.
+ * Cancelling a running task completes the future right away and makes the
+ * {@link SolverEngine} kill the process, but the slot is only freed once the process is gone.
+ * A task that is cancelled before it ran never starts its job.
+ */
+
+public class JobTask extends FutureTask<Void>
+{
+    private static final Logger log = Logger.getLogger(JobTask.class);
+
+    private final String jobId;
+    private final Consumer<JobTask> starter;
+    private final AtomicBoolean started = new AtomicBoolean();
+    private final AtomicBoolean finished = new AtomicBoolean();
+    private volatile Runnable onFinished;
+
+    /**
+     * @param starter starts the job, which calls {@link #complete()} when it finished
+     */
+    public JobTask(String jobId, Consumer<JobTask> starter)
+    {
+        super(() -> null);
+        this.jobId = jobId;
+        this.starter = starter;
+    }
+
+    public String getJobId()
+    {
+        return jobId;
+    }
+
+    /**
+     * @param onFinished called once when the job finished, set before the task runs
+     */
+    public void whenFinished(Runnable onFinished)
+    {
+        this.onFinished = onFinished;
+    }
+
+    @Override
+    public void run()
+    {
+        // cancelled after the scheduler started it, but before it ran
+        if (!started.compareAndSet(false, true))
+        {
+            complete();
+            return;
+        }
+        try
+        {
+            starter.accept(this);
+        }
+        catch (RuntimeException e)
+        {
+            log.error("starting job " + jobId + " says " + e.getMessage(), e);
+            complete();
+        }
+    }
+
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning)
+    {
+        boolean cancelled = super.cancel(false);
+        if (cancelled)
+        {
+            CvcContext.getSolverEngine().cancel(jobId);
+        }
+        return cancelled;
+    }
+
+    /**
+     * Keeps a cancelled task from starting its job
+     *
+     * @return true if the job never started and never will, so that it has to be finished
+     *         by the caller, or false if the job started and finishes once its process is gone
+     */
+    public boolean preventStart()
+    {
+        return isCancelled() && started.compareAndSet(false, true);
+    }
+
+    /**
+     * Called by the job when it finished
+     */
+    public void complete()
+    {
+        set(null);
+        if (finished.compareAndSet(false, true))
+        {
+            Runnable runnable = onFinished;
+            if (runnable != null)
+            {
+                runnable.run();
+            }
+        }
+    }
+}
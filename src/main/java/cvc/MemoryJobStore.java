@@ -0,0 +1,560 @@
+/* This file is part of the cvc-webservices.
+ *  Copyright (c) 2018 by the Board of Trustees of the University of Iowa
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you
+ *  may not use this file except in compliance with the License.  You
+ *  may obtain a copy of the License at
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package cvc;
+
+import org.apache.log4j.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Keeps the code and the outputs of jobs in byte arrays in front of a {@link FileJobStore},
+ * so that running and reading recent jobs does not touch the jobs directory.
+ * Saved jobs are written behind to their directory by a background thread when an output
+ * is closed, i.e. when the job finishes. Temporary jobs are not written at all.
+ * A job is written to its directory and from then on read from and written to its files when
+ * it is persisted, when its size exceeds the output limit, or when it is evicted because the
+ * jobs kept in memory exceed their capacity. The last two happen on a background thread, so
+ * the thread writing an output, e.g. the event loop of the solver engine, never waits for
+ * the disk on behalf of other jobs. A finished temporary job whose results were read is
+ * dropped instead when it is evicted.
+ */
+
+public class MemoryJobStore implements JobStore
+{
+    private static final Logger log = Logger.getLogger(MemoryJobStore.class);
+
+    /**
+     * The code and outputs of a job held in memory
+     */
+    private class MemoryJob
+    {
+        private final String jobId;
+        private final String code;
+
+        // guarded by this
+        private final Map<String, OutputBuffer> outputs = new LinkedHashMap<>();
+        private boolean spilled;
+        private boolean spilling; // a spill was scheduled because the job exceeded the output limit
+        private boolean dirty = true; // the directory of the job is not up to date
+        private boolean delivered; // the results were read to their end after the job finished
+        private long size;
+
+        MemoryJob(String jobId, String code)
+        {
+            this.jobId = jobId;
+            this.code = code;
+            this.size = code.length();
+            outputs.put(Constants.RESULTS_FILE, new OutputBuffer(this, Constants.RESULTS_FILE));
+            outputs.put(Constants.ERRORS_FILE, new OutputBuffer(this, Constants.ERRORS_FILE));
+        }
+
+        /**
+         * @param create whether to create the output if it was not opened before
+         * @return the output with the given name, or null if the job was spilled or the output does not exist
+         */
+        synchronized OutputBuffer getOutput(String name, boolean create)
+        {
+            if (spilled)
+            {
+                return null;
+            }
+            return create ? outputs.computeIfAbsent(name, key -> new OutputBuffer(this, key)) : outputs.get(name);
+        }
+
+        private boolean isClosed()
+        {
+            for (OutputBuffer output : outputs.values())
+            {
+                if (!output.closed)
+                {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * @return whether the job is temporary and its results were delivered, so that it can
+         * be dropped instead of spilled when it is evicted
+         */
+        synchronized boolean isDisposable()
+        {
+            return jobId.startsWith(Constants.tempPrefix) && delivered && isClosed();
+        }
+
+        /**
+         * Writes the job to its directory and switches its outputs to the files
+         */
+        synchronized void spill() throws IOException
+        {
+            if (spilled)
+            {
+                return;
+            }
+            spilled = true;
+            if (!dirty && isClosed())
+            {
+                // the finished job was already written behind
+                return;
+            }
+            disk.create(jobId, code);
+            for (OutputBuffer output : outputs.values())
+            {
+                output.spill();
+            }
+            dirty = false;
+        }
+
+        /**
+         * Writes a copy of the job to its directory, and keeps it in memory
+         */
+        void writeBehind() throws IOException
+        {
+            Map<String, byte[]> copies = new LinkedHashMap<>();
+            synchronized (this)
+            {
+                if (spilled || !dirty)
+                {
+                    return;
+                }
+                for (OutputBuffer output : outputs.values())
+                {
+                    copies.put(output.name, Arrays.copyOf(output.bytes, output.length));
+                }
+                dirty = false;
+            }
+
+            // the writer is a single thread, so a later copy is never overwritten by an earlier one
+            disk.create(jobId, code);
+            for (Map.Entry<String, byte[]> copy : copies.entrySet())
+            {
+                write(copy.getKey(), copy.getValue());
+            }
+        }
+
+        private void write(String name, byte[] bytes) throws IOException
+        {
+            try (OutputStream file = disk.openOutput(jobId, name))
+            {
+                file.write(bytes);
+            }
+        }
+    }
+
+    /**
+     * One output of a job, kept in memory until the job is spilled
+     */
+    private class OutputBuffer extends OutputStream
+    {
+        private final MemoryJob job;
+        private final String name;
+
+        // guarded by job
+        private byte[] bytes = new byte[256];
+        private int length;
+        private OutputStream file;
+        private boolean closed;
+
+        OutputBuffer(MemoryJob job, String name)
+        {
+            this.job = job;
+            this.name = name;
+        }
+
+        @Override
+        public void write(int b) throws IOException
+        {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] buffer, int offset, int count) throws IOException
+        {
+            boolean grown = false;
+            synchronized (job)
+            {
+                if (file != null)
+                {
+                    file.write(buffer, offset, count);
+                    return;
+                }
+
+                if (length + count > bytes.length)
+                {
+                    bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, length + count));
+                }
+                System.arraycopy(buffer, offset, bytes, length, count);
+                length += count;
+                job.size += count;
+                job.dirty = true;
+
+                if (job.size > outputLimit)
+                {
+                    // the writer may be the event loop of the solver engine, so it does not wait for the spill
+                    if (!job.spilling)
+                    {
+                        job.spilling = true;
+                        evict(Collections.singletonList(job));
+                    }
+                }
+                else
+                {
+                    grown = true;
+                }
+            }
+
+            if (grown)
+            {
+                grow(job, count);
+            }
+        }
+
+        byte[] read(long offset, int maxLength) throws IOException
+        {
+            synchronized (job)
+            {
+                if (bytes != null)
+                {
+                    int start = (int) Math.min(offset, length);
+                    int end = (int) Math.min(length, start + (long) maxLength);
+                    if (end == length && name.equals(Constants.RESULTS_FILE) && job.isClosed())
+                    {
+                        job.delivered = true;
+                    }
+                    return Arrays.copyOfRange(bytes, start, end);
+                }
+            }
+            return disk.readOutput(job.jobId, name, offset, maxLength);
+        }
+
+        // called with the lock of the job
+        private void spill() throws IOException
+        {
+            OutputStream stream = disk.openOutput(job.jobId, name);
+            stream.write(bytes, 0, length);
+            bytes = null;
+            if (closed)
+            {
+                stream.close();
+            }
+            else
+            {
+                file = stream;
+            }
+        }
+
+        @Override
+        public void close() throws IOException
+        {
+            boolean writeBehind;
+            synchronized (job)
+            {
+                if (closed)
+                {
+                    return;
+                }
+                closed = true;
+                if (file != null)
+                {
+                    file.close();
+                }
+                writeBehind = !job.spilled && !job.jobId.startsWith(Constants.tempPrefix);
+            }
+
+            if (writeBehind)
+            {
+                try
+                {
+                    writer.execute(() -> writeBehind(job));
+                }
+                catch (RejectedExecutionException e)
+                {
+                    // the store is shutting down, and may have written its jobs already
+                    writeBehind(job);
+                }
+            }
+        }
+    }
+
+    private final FileJobStore disk;
+    private final long capacity; // bytes
+    private final long outputLimit; // bytes
+    private final ExecutorService writer = Executors.newSingleThreadExecutor();
+    // spills the evicted jobs, so that the threads writing the outputs never wait for the disk
+    private final ExecutorService evictor = Executors.newSingleThreadExecutor();
+    private final AtomicBoolean evictionScheduled = new AtomicBoolean();
+
+    // guarded by jobs, in least recently used order
+    private final LinkedHashMap<String, MemoryJob> jobs = new LinkedHashMap<>(16, 0.75f, true);
+    private long size; // bytes
+
+    /**
+     * @param disk        the store the jobs are written to
+     * @param capacity    the maximum number of bytes of all jobs kept in memory
+     * @param outputLimit the maximum number of bytes of one job kept in memory
+     */
+    public MemoryJobStore(FileJobStore disk, long capacity, long outputLimit)
+    {
+        this.disk = disk;
+        this.capacity = capacity;
+        this.outputLimit = outputLimit;
+    }
+
+    private MemoryJob get(String jobId)
+    {
+        synchronized (jobs)
+        {
+            return jobs.get(jobId);
+        }
+    }
+
+    @Override
+    public void create(String jobId, String code)
+    {
+        MemoryJob job = new MemoryJob(jobId, code);
+        synchronized (jobs)
+        {
+            MemoryJob previous = jobs.put(jobId, job);
+            if (previous != null)
+            {
+                size -= previous.size;
+            }
+        }
+        grow(job, job.size);
+    }
+
+    @Override
+    public boolean exists(String jobId)
+    {
+        return get(jobId) != null || disk.exists(jobId);
+    }
+
+    @Override
+    public String getCode(String jobId) throws IOException
+    {
+        MemoryJob job = get(jobId);
+        return job != null ? job.code : disk.getCode(jobId);
+    }
+
+    @Override
+    public OutputStream openOutput(String jobId, String name) throws IOException
+    {
+        MemoryJob job = get(jobId);
+        OutputBuffer output = job == null ? null : job.getOutput(name, true);
+        if (output == null)
+        {
+            return disk.openOutput(jobId, name);
+        }
+        return output;
+    }
+
+    @Override
+    public byte[] readOutput(String jobId, String name, long offset, int maxLength) throws IOException
+    {
+        MemoryJob job = get(jobId);
+        OutputBuffer output = job == null ? null : job.getOutput(name, false);
+        if (output == null)
+        {
+            return disk.readOutput(jobId, name, offset, maxLength);
+        }
+        return output.read(offset, maxLength);
+    }
+
+    @Override
+    public boolean isInMemory(String jobId)
+    {
+        return get(jobId) != null;
+    }
+
+    @Override
+    public File persist(String jobId) throws IOException
+    {
+        MemoryJob job = get(jobId);
+        if (job != null)
+        {
+            job.spill();
+            remove(job);
+        }
+        return disk.getDirectory(jobId);
+    }
+
+    @Override
+    public File getDirectory(String jobId)
+    {
+        return disk.getDirectory(jobId);
+    }
+
+    @Override
+    public void enforceRetention()
+    {
+        disk.enforceRetention();
+    }
+
+    /**
+     * Stops the evictor and the writer after they wrote the pending jobs, and writes the saved
+     * jobs that are still running
+     */
+    @Override
+    public void shutdown()
+    {
+        evictor.shutdown();
+        writer.shutdown();
+        try
+        {
+            evictor.awaitTermination(1, TimeUnit.MINUTES);
+            writer.awaitTermination(1, TimeUnit.MINUTES);
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+
+        List<MemoryJob> remaining;
+        synchronized (jobs)
+        {
+            remaining = new ArrayList<>(jobs.values());
+        }
+        for (MemoryJob job : remaining)
+        {
+            if (!job.jobId.startsWith(Constants.tempPrefix))
+            {
+                writeBehind(job);
+            }
+        }
+        disk.shutdown();
+    }
+
+    private void writeBehind(MemoryJob job)
+    {
+        try
+        {
+            job.writeBehind();
+        }
+        catch (IOException e)
+        {
+            log.error("writing job " + job.jobId + " says " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Removes a job from memory unless it was replaced by a new run
+     */
+    private void remove(MemoryJob job)
+    {
+        synchronized (jobs)
+        {
+            if (jobs.remove(job.jobId, job))
+            {
+                size -= job.size;
+            }
+        }
+    }
+
+    /**
+     * Accounts for the new bytes of a job, and schedules the eviction of the least recently
+     * used jobs if the jobs in memory exceed the capacity, which they may do until the
+     * eviction ran
+     */
+    private void grow(MemoryJob job, long bytes)
+    {
+        boolean full;
+        synchronized (jobs)
+        {
+            if (jobs.get(job.jobId) == job)
+            {
+                size += bytes;
+            }
+            full = size > capacity;
+        }
+
+        if (full && evictionScheduled.compareAndSet(false, true))
+        {
+            try
+            {
+                evictor.execute(this::evictLeastRecentlyUsed);
+            }
+            catch (RejectedExecutionException e)
+            {
+                // the store is shutting down
+            }
+        }
+    }
+
+    private void evictLeastRecentlyUsed()
+    {
+        evictionScheduled.set(false);
+        List<MemoryJob> evicted = new ArrayList<>();
+        synchronized (jobs)
+        {
+            long remaining = size;
+            Iterator<MemoryJob> iterator = jobs.values().iterator();
+            while (remaining > capacity && iterator.hasNext())
+            {
+                MemoryJob victim = iterator.next();
+                remaining -= victim.size;
+                evicted.add(victim);
+            }
+        }
+
+        spill(evicted);
+    }
+
+    /**
+     * Spills jobs, or drops the disposable ones, and removes them from memory on the evictor
+     */
+    private void evict(List<MemoryJob> evicted)
+    {
+        try
+        {
+            evictor.execute(() -> spill(evicted));
+        }
+        catch (RejectedExecutionException e)
+        {
+            // the store is shutting down, and keeps the jobs in memory
+        }
+    }
+
+    private void spill(List<MemoryJob> evicted)
+    {
+        // spill outside the lock of the jobs, because writers hold their job's lock while they take it
+        for (MemoryJob victim : evicted)
+        {
+            try
+            {
+                if (!victim.isDisposable())
+                {
+                    victim.spill();
+                }
+                remove(victim);
+            }
+            catch (IOException e)
+            {
+                log.error("spilling job " + victim.jobId + " says " + e.getMessage(), e);
+            }
+        }
+    }
+}
@@ -0,0 +1,164 @@
+/* This file is part of the cvc-webservices.
+ *  Copyright (c) 2018 by the Board of Trustees of the University of Iowa
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you
+ *  may not use this file except in compliance with the License.  You
+ *  may obtain a copy of the License at
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package cvc;
+
+import cvc.Contracts.QueueStatistics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters and latency histograms of the service, written in the Prometheus text format.
+ * Recording only increments atomic counters, so it adds no locks to the request path.
+ * The queue gauges are read from the {@link JobScheduler} when the metrics are written.
+ */
+
+public class Metrics
+{
+    public static final String CONTENT_TYPE = "text/plain; version=0.0.4";
+
+    /**
+     * A histogram with a bucket for every power of two microseconds, from 1 microsecond to
+     * about 71 minutes, like an HdrHistogram with one significant bit
+     */
+    public static class Histogram
+    {
+        private static final int BUCKETS = 33;
+
+        private final String name;
+        private final String help;
+        private final AtomicLongArray counts = new AtomicLongArray(BUCKETS + 1); // the last one is +Inf
+        private final LongAdder sum = new LongAdder(); // microseconds
+
+        Histogram(String name, String help)
+        {
+            this.name = name;
+            this.help = help;
+        }
+
+        public void record(long duration, TimeUnit unit)
+        {
+            long micros = Math.max(0, unit.toMicros(duration));
+            // the smallest bucket whose bound 2^i is at least micros
+            int index = micros <= 1 ? 0 : 64 - Long.numberOfLeadingZeros(micros - 1);
+            counts.incrementAndGet(Math.min(index, BUCKETS));
+            sum.add(micros);
+        }
+
+        /**
+         * Records the time since the given {@link System#nanoTime()}
+         */
+        public void recordSince(long startNanos)
+        {
+            record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+        }
+
+        private void write(StringBuilder builder)
+        {
+            header(builder, name, help, "histogram");
+            long cumulative = 0;
+            for (int i = 0; i < BUCKETS; i++)
+            {
+                cumulative += counts.get(i);
+                builder.append(name).append("_bucket{le=\"").append((1L << i) / 1e6).append("\"} ")
+                        .append(cumulative).append('\n');
+            }
+            cumulative += counts.get(BUCKETS);
+            builder.append(name).append("_bucket{le=\"+Inf\"} ").append(cumulative).append('\n');
+            builder.append(name).append("_sum ").append(sum.sum() / 1e6).append('\n');
+            builder.append(name).append("_count ").append(cumulative).append('\n');
+        }
+    }
+
+    public static final LongAdder jobsSubmitted = new LongAdder();
+    public static final LongAdder jobsCompleted = new LongAdder();
+    public static final LongAdder jobsCancelled = new LongAdder();
+    public static final LongAdder jobsTimedOut = new LongAdder();
+    public static final LongAdder outputBytes = new LongAdder();
+    public static final LongAdder webSocketSessions = new LongAdder();
+    public static final LongAdder processesKilled = new LongAdder();
+    public static final LongAdder orphansKilled = new LongAdder();
+    public static final LongAdder jobsEvicted = new LongAdder();
+
+    public static final Histogram queueWait = new Histogram("cvc_queue_wait_seconds",
+            "Time jobs waited for a slot");
+    public static final Histogram spawnLatency = new Histogram("cvc_process_spawn_seconds",
+            "Time to start a cvc process");
+    public static final Histogram solverTime = new Histogram("cvc_solver_wall_seconds",
+            "Wall time of cvc processes");
+    public static final Histogram resultReadLatency = new Histogram("cvc_result_read_seconds",
+            "Time to read the results of a job");
+
+    /**
+     * @return the metrics in the Prometheus text format
+     */
+    public static String write()
+    {
+        StringBuilder builder = new StringBuilder();
+
+        QueueStatistics statistics = CvcContext.getJobScheduler().getStatistics();
+        gauge(builder, "cvc_queue_depth", "Jobs waiting for a slot", statistics.queued);
+        gauge(builder, "cvc_queue_capacity", "Jobs that can wait for a slot", statistics.capacity);
+        gauge(builder, "cvc_jobs_running", "Jobs running", statistics.running);
+        gauge(builder, "cvc_max_threads", "Solver slots, the jobs that can run at the same time", CvcContext.maxThreads);
+
+        counter(builder, "cvc_jobs_submitted_total", "Jobs submitted to the scheduler", jobsSubmitted.sum());
+        counter(builder, "cvc_jobs_rejected_total", "Jobs rejected because the queue was full", statistics.rejected);
+        counter(builder, "cvc_jobs_completed_total", "Jobs whose process finished", jobsCompleted.sum());
+        counter(builder, "cvc_jobs_cancelled_total", "Jobs cancelled by clients", jobsCancelled.sum());
+        counter(builder, "cvc_jobs_timed_out_total", "Jobs killed after the hard timeout", jobsTimedOut.sum());
+        counter(builder, "cvc_processes_killed_total", "Processes of jobs killed before they exited",
+                processesKilled.sum());
+        counter(builder, "cvc_orphans_killed_total", "Processes of a previous run killed at startup",
+                orphansKilled.sum());
+        gauge(builder, "cvc_processes", "Processes of jobs that did not free their slot",
+                CvcContext.getProcessSupervisor().getProcessCount());
+        gauge(builder, "cvc_supervised_processes", "Processes of jobs the solver engine waits for",
+                CvcContext.getSolverEngine().getRunningCount());
+        counter(builder, "cvc_jobs_evicted_total", "Temporary jobs deleted to meet the retention budgets",
+                jobsEvicted.sum());
+        if (CvcContext.getFileJobStore() != null)
+        {
+            gauge(builder, "cvc_temporary_job_bytes", "Bytes of the temporary jobs on disk",
+                    CvcContext.getFileJobStore().getTemporaryBytes());
+        }
+        counter(builder, "cvc_output_bytes_total", "Bytes of output written by cvc", outputBytes.sum());
+        gauge(builder, "cvc_websocket_sessions", "Open WebSocket sessions of /getResults",
+                webSocketSessions.sum());
+
+        queueWait.write(builder);
+        spawnLatency.write(builder);
+        solverTime.write(builder);
+        resultReadLatency.write(builder);
+        return builder.toString();
+    }
+
+    private static void header(StringBuilder builder, String name, String help, String type)
+    {
+        builder.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        builder.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    private static void gauge(StringBuilder builder, String name, String help, long value)
+    {
+        header(builder, name, help, "gauge");
+        builder.append(name).append(' ').append(value).append('\n');
+    }
+
+    private static void counter(StringBuilder builder, String name, String help, long value)
+    {
+        header(builder, name, help, "counter");
+        builder.append(name).append(' ').append(value).append('\n');
+    }
+}
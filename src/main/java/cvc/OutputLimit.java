@@ -0,0 +1,155 @@
+/* This file is part of the cvc-webservices.
+ *  Copyright (c) 2018 by the Board of Trustees of the University of Iowa
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you
+ *  may not use this file except in compliance with the License.  You
+ *  may obtain a copy of the License at
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package cvc;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Limits the output of a job across its streams.
+ * The first maxBytes bytes are written as they come. After that each stream keeps only its
+ * last tailBytes bytes, which are written when the stream is closed after a marker that
+ * tells how many bytes were left out.
+ */
+
+public class OutputLimit
+{
+    public static final String TRUNCATION_MARKER = "[output truncated: ";
+
+    private final long maxBytes;
+    private final int tailBytes;
+    // called once when the output exceeds the limit, or null
+    private final Runnable onExceeded;
+
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicBoolean exceeded = new AtomicBoolean();
+
+    /**
+     * @param maxBytes   the number of bytes of all streams written as they come
+     * @param tailBytes  the number of bytes at the end of each stream kept once the limit is exceeded
+     * @param onExceeded called when the limit is exceeded, e.g. to kill the process, or null
+     */
+    public OutputLimit(long maxBytes, int tailBytes, Runnable onExceeded)
+    {
+        this.maxBytes = maxBytes;
+        this.tailBytes = tailBytes;
+        this.onExceeded = onExceeded;
+    }
+
+    public boolean isExceeded()
+    {
+        return exceeded.get();
+    }
+
+    /**
+     * @return a stream that writes to the given stream within the limit
+     */
+    public OutputStream wrap(OutputStream out)
+    {
+        return new LimitedOutputStream(out);
+    }
+
+    private class LimitedOutputStream extends OutputStream
+    {
+        private final OutputStream out;
+
+        // the last bytes beyond the limit, in a ring
+        private byte[] tail;
+        private int tailPosition;
+        private long dropped;
+
+        LimitedOutputStream(OutputStream out)
+        {
+            this.out = out;
+        }
+
+        @Override
+        public void write(int b) throws IOException
+        {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException
+        {
+            long before = written.getAndAdd(length);
+            int allowed = (int) Math.max(0, Math.min(length, maxBytes - before));
+            if (allowed > 0)
+            {
+                out.write(bytes, offset, allowed);
+            }
+            if (allowed < length)
+            {
+                keep(bytes, offset + allowed, length - allowed);
+                if (exceeded.compareAndSet(false, true) && onExceeded != null)
+                {
+                    onExceeded.run();
+                }
+            }
+        }
+
+        private void keep(byte[] bytes, int offset, int length)
+        {
+            dropped += length;
+            if (tailBytes == 0)
+            {
+                return;
+            }
+            if (tail == null)
+            {
+                tail = new byte[tailBytes];
+            }
+            // only the last tailBytes bytes can end up in the tail
+            if (length > tailBytes)
+            {
+                offset += length - tailBytes;
+                length = tailBytes;
+            }
+            int first = Math.min(length, tailBytes - tailPosition);
+            System.arraycopy(bytes, offset, tail, tailPosition, first);
+            System.arraycopy(bytes, offset + first, tail, 0, length - first);
+            tailPosition = (tailPosition + length) % tailBytes;
+        }
+
+        @Override
+        public void close() throws IOException
+        {
+            try
+            {
+                if (dropped > 0)
+                {
+                    int kept = (int) Math.min(dropped, tailBytes);
+                    String marker = "\n" + TRUNCATION_MARKER + (dropped - kept) + " bytes omitted]\n";
+                    out.write(marker.getBytes(Charset.defaultCharset()));
+
+                    // the oldest kept byte is at tailPosition once the ring is full
+                    if (kept > 0)
+                    {
+                        int start = kept < tailBytes ? 0 : tailPosition;
+                        int first = Math.min(kept, tailBytes - start);
+                        out.write(tail, start, first);
+                        out.write(tail, 0, kept - first);
+                    }
+                    dropped = 0;
+                }
+            }
+            finally
+            {
+                out.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,102 @@
+/* This file is part of the cvc-webservices.
+ *  Copyright (c) 2018 by the Board of Trustees of the University of Iowa
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you
+ *  may not use this file except in compliance with the License.  You
+ *  may obtain a copy of the License at
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package cvc;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Copies one output stream of a cvc process into the job's file or memory buffer as the
+ * process writes it, and notifies the streaming clients of the job after every chunk.
+ * The {@link SolverEngine} copies what is available on every tick, which never blocks, and
+ * drains the rest once the process is gone.
+ * The copy goes through a buffer of the copying thread, so pumping allocates nothing per job.
+ */
+
+public class OutputPump
+{
+    private static final int BUFFER_SIZE = 8192;
+
+    // the most a pump copies in one tick, so that one job cannot hold up the others
+    private static final int MAX_CHUNKS = 64;
+
+    private static final ThreadLocal<byte[]> buffers = ThreadLocal.withInitial(() -> new byte[BUFFER_SIZE]);
+
+    private final String jobId;
+    private final InputStream input;
+    private final OutputStream output;
+
+    /**
+     * @param jobId  the id of the job
+     * @param input  the output stream of the process
+     * @param output where the output is copied to, which is left open
+     */
+    public OutputPump(String jobId, InputStream input, OutputStream output)
+    {
+        this.jobId = jobId;
+        this.input = input;
+        this.output = output;
+    }
+
+    /**
+     * Copies the output that can be read without blocking
+     *
+     * @return the number of bytes copied
+     */
+    public int pumpAvailable() throws IOException
+    {
+        byte[] buffer = buffers.get();
+        int copied = 0;
+        for (int chunk = 0; chunk < MAX_CHUNKS; chunk++)
+        {
+            int available = input.available();
+            if (available <= 0)
+            {
+                break;
+            }
+            int length = input.read(buffer, 0, Math.min(available, buffer.length));
+            if (length == -1)
+            {
+                break;
+            }
+            copy(buffer, length);
+            copied += length;
+        }
+        return copied;
+    }
+
+    /**
+     * Copies the rest of the output until the process and its children closed the stream,
+     * and closes it
+     */
+    public void drain() throws IOException
+    {
+        byte[] buffer = buffers.get();
+        try (InputStream in = input)
+        {
+            int length;
+            while ((length = in.read(buffer)) != -1)
+            {
+                copy(buffer, length);
+            }
+        }
+    }
+
+    private void copy(byte[] buffer, int length) throws IOException
+    {
+        output.write(buffer, 0, length);
+        Metrics.outputBytes.add(length);
+        OutputStreamer.notifyOutput(jobId);
+    }
+}
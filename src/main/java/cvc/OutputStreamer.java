@@ -0,0 +1,228 @@
+/* This file is part of the cvc-webservices.
+ *  Copyright (c) 2018 by the Board of Trustees of the University of Iowa
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you
+ *  may not use this file except in compliance with the License.  You
+ *  may obtain a copy of the License at
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package cvc;
+
+import cvc.Contracts.OutputChunk;
+import org.apache.log4j.Logger;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * Streams the output of a job to one client as it is written.
+ * Each stream (stdout and stderr) is sent from a byte offset, so a client that
+ * reconnects with the offsets of the last chunks it received resumes where it left off.
+ * While the job runs only complete lines are sent, which keeps multi-byte characters and
+ * the job path that is removed from the output within a single chunk.
+ */
+
+public class OutputStreamer
+{
+    private static final Logger log = Logger.getLogger(OutputStreamer.class);
+
+    public static final String STDOUT = "stdout";
+    public static final String STDERR = "stderr";
+
+    private static final int CHUNK_SIZE = 65536;
+
+    /**
+     * The destination of the chunks, e.g. a WebSocket session or a Server-Sent Events connection
+     */
+    public interface Sink
+    {
+        void send(OutputChunk chunk) throws IOException;
+
+        void close();
+    }
+
+    private static final ConcurrentMap<String, Set<OutputStreamer>> streamers = new ConcurrentHashMap<>();
+
+    private final String jobId;
+    private final Sink sink;
+    private final String absolutePath;
+    private long stdoutOffset;
+    private long stderrOffset;
+
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+    private volatile boolean finished;
+    private boolean stopped;
+
+    private final Consumer<String> completionListener = id ->
+    {
+        finished = true;
+        schedule();
+    };
+
+    private OutputStreamer(String jobId, long stdoutOffset, long stderrOffset, Sink sink)
+    {
+        this.jobId = jobId;
+        this.sink = sink;
+        this.stdoutOffset = stdoutOffset;
+        this.stderrOffset = stderrOffset;
+        this.absolutePath = CvcContext.getJobStore().getDirectory(jobId).getAbsolutePath();
+    }
+
+    /**
+     * Starts streaming the output of a job
+     *
+     * @param jobId        the id of the job
+     * @param stdoutOffset the offset in the standard output to start from
+     * @param stderrOffset the offset in the standard error to start from
+     * @param sink         the destination of the chunks
+     */
+    public static OutputStreamer start(String jobId, long stdoutOffset, long stderrOffset, Sink sink)
+    {
+        OutputStreamer streamer = new OutputStreamer(jobId, stdoutOffset, stderrOffset, sink);
+        streamers.computeIfAbsent(jobId, id -> ConcurrentHashMap.newKeySet()).add(streamer);
+        JobCompletion.addListener(jobId, streamer.completionListener);
+        // send what was written before the client connected
+        streamer.schedule();
+        return streamer;
+    }
+
+    /**
+     * @return the offset, or null if it is not a number or negative
+     */
+    public static Long parseOffset(String offset)
+    {
+        if (offset == null)
+        {
+            return null;
+        }
+        try
+        {
+            long value = Long.parseLong(offset.trim());
+            return value < 0 ? null : value;
+        }
+        catch (NumberFormatException e)
+        {
+            return null;
+        }
+    }
+
+    /**
+     * Stops streaming without closing the sink, e.g. when the client disconnected
+     */
+    public void stop()
+    {
+        synchronized (this)
+        {
+            stopped = true;
+        }
+        streamers.computeIfPresent(jobId, (id, set) ->
+        {
+            set.remove(this);
+            return set.isEmpty() ? null : set;
+        });
+        JobCompletion.removeListener(jobId, completionListener);
+    }
+
+    /**
+     * Called when new output of the given job is available
+     */
+    public static void notifyOutput(String jobId)
+    {
+        Set<OutputStreamer> set = streamers.get(jobId);
+        if (set != null)
+        {
+            for (OutputStreamer streamer : set)
+            {
+                streamer.schedule();
+            }
+        }
+    }
+
+    private void schedule()
+    {
+        // coalesce notifications while a drain is pending
+        if (scheduled.compareAndSet(false, true))
+        {
+            CvcContext.getStreamingService().execute(this::drain);
+        }
+    }
+
+    private synchronized void drain()
+    {
+        scheduled.set(false);
+        if (stopped)
+        {
+            return;
+        }
+
+        // read the flag before the files, so all the output has been written if it is set
+        boolean last = finished;
+        try
+        {
+            stdoutOffset = send(STDOUT, Constants.RESULTS_FILE, stdoutOffset, last);
+            stderrOffset = send(STDERR, Constants.ERRORS_FILE, stderrOffset, last);
+
+            if (last)
+            {
+                OutputChunk chunk = new OutputChunk();
+                chunk.jobId = jobId;
+                chunk.jobFinished = true;
+                sink.send(chunk);
+                stop();
+                sink.close();
+            }
+        }
+        catch (IOException e)
+        {
+            log.warn("streaming job " + jobId + " caught exception: " + e, e);
+            stop();
+            sink.close();
+        }
+    }
+
+    /**
+     * Sends the output of one stream written since the given offset
+     *
+     * @return the offset of the first byte that was not sent
+     */
+    private long send(String stream, String fileName, long offset, boolean last) throws IOException
+    {
+        while (true)
+        {
+            byte[] bytes = CvcClient.readOutput(jobId, fileName, offset, CHUNK_SIZE);
+            int length = bytes.length;
+            if (!last && length < CHUNK_SIZE)
+            {
+                // hold back an incomplete line until the rest of it is written
+                length = Util.lastIndexOf(bytes, (byte) '\n') + 1;
+            }
+            if (length == 0)
+            {
+                return offset;
+            }
+
+            OutputChunk chunk = new OutputChunk();
+            chunk.jobId = jobId;
+            chunk.stream = stream;
+            chunk.offset = offset;
+            chunk.nextOffset = offset + length;
+            chunk.data = new String(bytes, 0, length, Charset.defaultCharset()).replace(absolutePath, "");
+            sink.send(chunk);
+
+            offset += length;
+            if (bytes.length < CHUNK_SIZE)
+            {
+                return offset;
+            }
+        }
+    }
+}
@@ -0,0 +1,301 @@
+/* This file is part of the cvc-webservices.
+ *  Copyright (c) 2018 by the Board of Trustees of the University of Iowa
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you
+ *  may not use this file except in compliance with the License.  You
+ *  may obtain a copy of the License at
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package cvc;
+
+import cvc.Contracts.Configuration;
+import cvc.Contracts.Input;
+import cvc.Contracts.PortfolioEntry;
+import cvc.Contracts.PortfolioReport;
+import org.apache.log4j.Logger;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A job run with several configurations in parallel.
+ * Each configuration runs as a job of its own, with the id of the portfolio job followed by
+ * its index. The first configuration that answers sat or unsat wins: its output is copied
+ * to the portfolio job and the other configurations are cancelled, which kills their
+ * processes. If no configuration answers sat or unsat, the output of the first one is used.
+ * A portfolio is kept for its report for an hour after it finished.
+ */
+
+public class Portfolio
+{
+    private static final Logger log = Logger.getLogger(Portfolio.class);
+
+    private static final long RETENTION = 60; // minutes
+
+    private static final String CANCELLED = "cancelled";
+
+    private static final ConcurrentMap<String, Portfolio> portfolios = new ConcurrentHashMap<>();
+
+    private final String jobId;
+    private final String[] jobIds;
+
+    // guarded by this
+    private final String[] results;
+    private final Long[] runtimes;
+    private Integer winner;
+    private boolean finished;
+    private int remaining;
+
+    private Portfolio(String jobId, int size)
+    {
+        this.jobId = jobId;
+        this.jobIds = new String[size];
+        this.results = new String[size];
+        this.runtimes = new Long[size];
+        this.remaining = size;
+        for (int i = 0; i < size; i++)
+        {
+            jobIds[i] = jobId + "-" + i;
+        }
+    }
+
+    /**
+     * @return the portfolio of the job, or null if the job is not a portfolio job
+     */
+    public static Portfolio get(String jobId)
+    {
+        return portfolios.get(jobId);
+    }
+
+    /**
+     * Starts the configurations of a portfolio job
+     *
+     * @param client the client that submitted the job
+     * @param input  the job, whose portfolio has at least one configuration
+     * @throws IllegalArgumentException   if a configuration has an invalid argument, in which case no job is created
+     * @throws RejectedExecutionException if the queue is full, in which case no job runs
+     */
+    public static Portfolio submit(String client, Input input) throws IOException
+    {
+        List<Map<String, String>> arguments = new ArrayList<>();
+        List<List<String>> args = new ArrayList<>();
+        for (int i = 0; i < input.portfolio.length; i++)
+        {
+            Configuration configuration = input.portfolio[i];
+            Map<String, String> merged = input.arguments == null ? new HashMap<>() :
+                    new HashMap<>(input.arguments);
+            if (configuration != null && configuration.arguments != null)
+            {
+                merged.putAll(configuration.arguments);
+            }
+            try
+            {
+                args.add(CvcClient.getArguments(merged));
+            }
+            catch (IllegalArgumentException e)
+            {
+                throw new IllegalArgumentException("Configuration " + i + ": " + e.getMessage());
+            }
+            arguments.add(merged);
+        }
+
+        Portfolio portfolio = new Portfolio(input.jobId, input.portfolio.length);
+
+        // the portfolio job runs while any of its configurations runs, and cancelling it cancels them
+        FutureTask<Void> future = new FutureTask<Void>(() -> null)
+        {
+            @Override
+            public boolean cancel(boolean mayInterruptIfRunning)
+            {
+                portfolio.cancel();
+                return super.cancel(mayInterruptIfRunning);
+            }
+        };
+        CvcContext.getJobStore().create(input.jobId, input.code);
+        // the portfolio job runs from the start, while its configurations are queued or running
+        JobRegistry.register(input.jobId);
+        JobRegistry.started(input.jobId);
+        CvcContext.runningTasks.put(input.jobId, future);
+        portfolios.put(input.jobId, portfolio);
+
+        List<JobTask> tasks = new ArrayList<>();
+        for (int i = 0; i < portfolio.jobIds.length; i++)
+        {
+            tasks.add(CvcClient.prepareJob(portfolio.jobIds[i], input.code, args.get(i), input.useCache));
+        }
+        for (String id : portfolio.jobIds)
+        {
+            // called right away for the configurations answered from the cache
+            JobCompletion.addListener(id, portfolio::configurationFinished);
+        }
+
+        JobScheduler scheduler = CvcContext.getJobScheduler();
+        for (int i = 0; i < tasks.size(); i++)
+        {
+            JobTask task = tasks.get(i);
+            // a configuration is cancelled once another one won
+            if (task == null || task.isCancelled())
+            {
+                continue;
+            }
+            try
+            {
+                JobFeatures features = JobFeatures.of(input.code, arguments.get(i));
+                scheduler.submit(portfolio.jobIds[i], client, features, task);
+            }
+            catch (RejectedExecutionException e)
+            {
+                // cancels the configurations, including those that were not submitted
+                CvcClient.cancelJob(input.jobId);
+                throw e;
+            }
+        }
+        return portfolio;
+    }
+
+    /**
+     * Cancels the configurations that are still queued or running
+     */
+    private void cancel()
+    {
+        synchronized (this)
+        {
+            finished = true;
+        }
+        for (String id : jobIds)
+        {
+            CvcClient.cancelJob(id);
+        }
+        scheduleRemoval();
+    }
+
+    // called on the thread that finished or cancelled the configuration, so the output is read elsewhere
+    private void configurationFinished(String configurationJobId)
+    {
+        Long runtime = getRuntime(configurationJobId);
+        CvcContext.getPortfolioService().execute(() -> evaluate(configurationJobId, runtime));
+    }
+
+    /**
+     * @return how long a finished configuration ran, without the time it was queued
+     */
+    private static Long getRuntime(String configurationJobId)
+    {
+        // the configuration finished in the registry before its listeners are called
+        JobRegistry.Entry entry = JobRegistry.get(configurationJobId);
+        if (entry == null)
+        {
+            return null;
+        }
+        Long runtime = entry.getRuntime();
+        // answered from the cache without running
+        return runtime == null && entry.getState() == JobRegistry.State.COMPLETED ? Long.valueOf(0) : runtime;
+    }
+
+    private void evaluate(String configurationJobId, Long runtime)
+    {
+        int index = Integer.parseInt(configurationJobId.substring(configurationJobId.lastIndexOf('-') + 1));
+        boolean decided;
+        Integer used = null;
+        synchronized (this)
+        {
+            runtimes[index] = runtime;
+            remaining--;
+            if (finished)
+            {
+                results[index] = CANCELLED;
+                return;
+            }
+
+            results[index] = CvcClient.getAnswer(configurationJobId);
+            decided = CvcClient.SAT.equals(results[index]) || CvcClient.UNSAT.equals(results[index]);
+            if (decided)
+            {
+                winner = index;
+            }
+            else if (remaining == 0)
+            {
+                // no configuration answered, so the job gets the output of the first one
+                winner = 0;
+            }
+            if (winner != null)
+            {
+                finished = true;
+                used = winner;
+            }
+        }
+
+        if (used == null)
+        {
+            return;
+        }
+        if (decided)
+        {
+            for (String id : jobIds)
+            {
+                CvcClient.cancelJob(id);
+            }
+        }
+        copyOutput(jobIds[used]);
+        JobRegistry.finished(jobId, JobRegistry.State.COMPLETED, null);
+        CvcContext.runningTasks.remove(jobId);
+        JobCompletion.notifyListeners(jobId);
+        scheduleRemoval();
+    }
+
+    private void scheduleRemoval()
+    {
+        CvcContext.getTaskScheduler().schedule(() -> portfolios.remove(jobId, this), RETENTION, TimeUnit.MINUTES);
+    }
+
+    /**
+     * Makes the output of a configuration the output of the portfolio job
+     */
+    private void copyOutput(String configurationJobId)
+    {
+        JobStore store = CvcContext.getJobStore();
+        for (String name : new String[]{Constants.RESULTS_FILE, Constants.ERRORS_FILE})
+        {
+            try (OutputStream output = store.openOutput(jobId, name))
+            {
+                output.write(store.readOutput(configurationJobId, name, 0, Integer.MAX_VALUE));
+            }
+            catch (IOException e)
+            {
+                log.error("copying configuration " + configurationJobId + " says " + e.getMessage(), e);
+            }
+        }
+    }
+
+    public synchronized PortfolioReport getReport()
+    {
+        PortfolioReport report = new PortfolioReport();
+        report.jobId = jobId;
+        report.winner = winner;
+        report.jobFinished = JobRegistry.isFinished(jobId);
+        report.configurations = new PortfolioEntry[jobIds.length];
+        for (int i = 0; i < jobIds.length; i++)
+        {
+            PortfolioEntry entry = new PortfolioEntry();
+            entry.index = i;
+            entry.jobId = jobIds[i];
+            entry.result = results[i];
+            entry.runtime = runtimes[i];
+            report.configurations[i] = entry;
+        }
+        return report;
+    }
+}
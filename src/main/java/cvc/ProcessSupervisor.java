@@ -0,0 +1,440 @@
+/* This file is part of the cvc-webservices.
+ *  Copyright (c) 2018 by the Board of Trustees of the University of Iowa
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you
+ *  may not use this file except in compliance with the License.  You
+ *  may obtain a copy of the License at
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package cvc;
+
+import org.apache.log4j.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Owns the processes of the jobs and kills the whole process tree of a job, e.g. runlim and
+ * the cvc process it started, when the job is cancelled, times out or fails.
+ * Every process is started with environment variables that its descendants inherit: the
+ * jobs directory of this service, the instance of the service, and the id of the job. The
+ * tree of a job is found by scanning /proc for these variables, so it includes the processes
+ * that were reparented after their parent died.
+ * Several deployments, e.g. a production and a development one, may share a jobs directory.
+ * An instance is the context path of the deployment and a nonce of its startup. It is
+ * written to the jobs directory with the pid and the start time of its JVM, which tell
+ * whether it is still alive. At startup the processes with the same jobs directory whose
+ * instance is gone are killed, including those of versions that did not tag the instance.
+ * Without /proc only the process started by the service is killed.
+ */
+
+public class ProcessSupervisor
+{
+    private static final Logger log = Logger.getLogger(ProcessSupervisor.class);
+
+    public static final String SERVICE_VARIABLE = "CVC_WEBSERVICES_JOBS";
+    public static final String INSTANCE_VARIABLE = "CVC_WEBSERVICES_INSTANCE";
+    public static final String JOB_VARIABLE = "CVC_WEBSERVICES_JOB";
+
+    // the file of an instance in the jobs directory, followed by its nonce
+    private static final String INSTANCE_PREFIX = ".instance-";
+
+    private static final File PROC = new File("/proc");
+
+    // how long the tree of a job may take to die before it is given up on
+    private static final long KILL_TIMEOUT = 5000; // milliseconds
+    private static final long KILL_PERIOD = 50; // milliseconds
+
+    private final String service;
+    private final String instance; // the context path and the nonce, separated by '#'
+    private final File instanceFile;
+    private final boolean procAvailable = new File(PROC, "self/environ").canRead();
+    private final ConcurrentMap<String, Process> processes = new ConcurrentHashMap<>();
+
+    /**
+     * @param jobsDirectory the jobs directory, which tells the processes of this service
+     *                      from the processes of other services on the same host
+     * @param contextPath   the context path of the deployment, which tells it from the other
+     *                      deployments that share the jobs directory
+     */
+    public ProcessSupervisor(String jobsDirectory, String contextPath)
+    {
+        File root = new File(jobsDirectory).getAbsoluteFile();
+        this.service = root.getPath();
+        String nonce = UUID.randomUUID().toString();
+        this.instance = contextPath + "#" + nonce;
+        this.instanceFile = new File(root, INSTANCE_PREFIX + nonce);
+        if (!procAvailable)
+        {
+            log.warn("/proc is not available, so only the processes started by the service are killed");
+            return;
+        }
+
+        String pid = readSelfPid();
+        String line = contextPath + "\n" + pid + "\n" + readStartTime(pid) + "\n";
+        File temporary = new File(root, instanceFile.getName() + ".tmp");
+        try
+        {
+            root.mkdirs();
+            Files.write(temporary.toPath(), line.getBytes(StandardCharsets.UTF_8));
+            // so that an instance is never seen half written, and taken for a dead one
+            Files.move(temporary.toPath(), instanceFile.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch (IOException e)
+        {
+            log.error("writing the instance " + instance + " says " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Removes the instance from the jobs directory when the service stops
+     */
+    public void shutdown()
+    {
+        instanceFile.delete();
+    }
+
+    /**
+     * Starts and registers the process of a job
+     */
+    public Process start(String jobId, ProcessBuilder builder) throws IOException
+    {
+        mark(builder, jobId);
+        Process process = builder.start();
+        processes.put(jobId, process);
+        return process;
+    }
+
+    /**
+     * Marks the processes started by a builder as processes of the service, so that they are
+     * killed at startup if the service stopped without killing them
+     *
+     * @param name the id of the job, or a name for processes that belong to no job
+     */
+    public void mark(ProcessBuilder builder, String name)
+    {
+        builder.environment().put(SERVICE_VARIABLE, service);
+        builder.environment().put(INSTANCE_VARIABLE, instance);
+        builder.environment().put(JOB_VARIABLE, name);
+    }
+
+    /**
+     * @return the number of processes started for jobs that are not released yet
+     */
+    public int getProcessCount()
+    {
+        return processes.size();
+    }
+
+    /**
+     * Kills the process tree of a job and waits until it is gone. The job stays registered.
+     */
+    public void terminate(String jobId)
+    {
+        boolean interrupted = false;
+        Process process = processes.get(jobId);
+        if (process != null && process.isAlive())
+        {
+            process.destroyForcibly();
+            Metrics.processesKilled.increment();
+        }
+
+        long deadline = System.currentTimeMillis() + KILL_TIMEOUT;
+        while (true)
+        {
+            List<String> pids = findProcesses(jobId);
+            if (pids.isEmpty())
+            {
+                break;
+            }
+            if (System.currentTimeMillis() > deadline)
+            {
+                log.error("the processes " + pids + " of job " + jobId + " did not die");
+                break;
+            }
+            kill(pids);
+            try
+            {
+                Thread.sleep(KILL_PERIOD);
+            }
+            catch (InterruptedException e)
+            {
+                // the job was cancelled while it was being killed
+                interrupted = true;
+            }
+        }
+
+        while (process != null)
+        {
+            try
+            {
+                // reaps the process, whose pipes are then closed
+                if (!process.waitFor(KILL_TIMEOUT, TimeUnit.MILLISECONDS))
+                {
+                    log.error("the process of job " + jobId + " did not die");
+                }
+                break;
+            }
+            catch (InterruptedException e)
+            {
+                interrupted = true;
+            }
+        }
+
+        if (interrupted)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Kills what is left of the process tree of a finished job, e.g. the children of a process
+     * that died, and unregisters the job. Called when the job frees its slot, so no process of
+     * the job runs after its slot is given to another job.
+     */
+    public void release(String jobId)
+    {
+        if (processes.containsKey(jobId))
+        {
+            terminate(jobId);
+            processes.remove(jobId);
+        }
+    }
+
+    /**
+     * Kills the processes left by previous runs of the services sharing the jobs directory,
+     * which may have been killed before they could kill the processes of their jobs, and
+     * removes the instances of those runs. The processes of live instances are left alone.
+     * Called before any process is started.
+     */
+    public void reconcile()
+    {
+        Map<String, Boolean> alive = new HashMap<>();
+        Map<String, String> orphans = new TreeMap<>();
+        for (String pid : listPids())
+        {
+            Map<String, String> environment = readEnvironment(pid);
+            String owner = environment.get(INSTANCE_VARIABLE);
+            if (service.equals(environment.get(SERVICE_VARIABLE)) &&
+                    (owner == null || !alive.computeIfAbsent(owner, this::isAlive)))
+            {
+                orphans.put(pid, owner + " " + environment.get(JOB_VARIABLE));
+            }
+        }
+        removeDeadInstances();
+        if (orphans.isEmpty())
+        {
+            return;
+        }
+
+        log.warn("killing " + orphans.size() + " orphaned processes of the instances and jobs " + orphans.values());
+        List<String> pids = new ArrayList<>(orphans.keySet());
+        long deadline = System.currentTimeMillis() + KILL_TIMEOUT;
+        while (!pids.isEmpty() && System.currentTimeMillis() <= deadline)
+        {
+            kill(pids);
+            Metrics.orphansKilled.add(pids.size());
+            try
+            {
+                Thread.sleep(KILL_PERIOD);
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            pids.removeIf(pid -> !service.equals(readEnvironment(pid).get(SERVICE_VARIABLE)));
+        }
+    }
+
+    /**
+     * @return the ids of the live processes of a job, whose environment is readable only
+     *         while they are not zombies
+     */
+    private List<String> findProcesses(String jobId)
+    {
+        List<String> pids = new ArrayList<>();
+        for (String pid : listPids())
+        {
+            Map<String, String> environment = readEnvironment(pid);
+            if (service.equals(environment.get(SERVICE_VARIABLE)) &&
+                    instance.equals(environment.get(INSTANCE_VARIABLE)) && jobId.equals(environment.get(JOB_VARIABLE)))
+            {
+                pids.add(pid);
+            }
+        }
+        return pids;
+    }
+
+    /**
+     * @param owner the context path and the nonce of an instance
+     * @return whether the instance is this one, or its JVM still runs
+     */
+    private boolean isAlive(String owner)
+    {
+        if (owner.equals(instance))
+        {
+            return true;
+        }
+        String nonce = owner.substring(owner.lastIndexOf('#') + 1);
+        return !nonce.contains(File.separator) &&
+                isAlive(new File(instanceFile.getParentFile(), INSTANCE_PREFIX + nonce));
+    }
+
+    private static boolean isAlive(File file)
+    {
+        List<String> lines;
+        try
+        {
+            lines = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+        }
+        catch (IOException e)
+        {
+            // removed when its service stopped
+            return false;
+        }
+        // a pid may be reused by another process, which started later
+        return lines.size() >= 3 && !lines.get(2).isEmpty() && lines.get(2).equals(readStartTime(lines.get(1)));
+    }
+
+    /**
+     * Removes the instances whose JVM is gone without removing them
+     */
+    private void removeDeadInstances()
+    {
+        File[] files = instanceFile.getParentFile().listFiles((directory, name) ->
+                name.startsWith(INSTANCE_PREFIX) && !name.endsWith(".tmp"));
+        if (files == null)
+        {
+            return;
+        }
+        for (File file : files)
+        {
+            if (!file.equals(instanceFile) && !isAlive(file))
+            {
+                file.delete();
+            }
+        }
+    }
+
+    private static String readSelfPid()
+    {
+        try
+        {
+            return new File(PROC, "self").getCanonicalFile().getName();
+        }
+        catch (IOException e)
+        {
+            return "";
+        }
+    }
+
+    /**
+     * @return the start time of a process in clock ticks since the boot, or an empty string
+     *         if the process is gone
+     */
+    private static String readStartTime(String pid)
+    {
+        if (pid.isEmpty() || !pid.chars().allMatch(Character::isDigit))
+        {
+            return "";
+        }
+        String stat;
+        try
+        {
+            stat = new String(Files.readAllBytes(new File(PROC, pid + "/stat").toPath()), StandardCharsets.UTF_8);
+        }
+        catch (IOException e)
+        {
+            return "";
+        }
+        // the fields after the name of the command, which may contain spaces, start with the state
+        String[] fields = stat.substring(stat.lastIndexOf(')') + 1).trim().split(" ");
+        return fields.length > 19 ? fields[19] : "";
+    }
+
+    private List<String> listPids()
+    {
+        if (!procAvailable)
+        {
+            return Collections.emptyList();
+        }
+        String[] names = PROC.list((directory, name) -> !name.isEmpty() && name.chars().allMatch(Character::isDigit));
+        List<String> pids = new ArrayList<>();
+        if (names != null)
+        {
+            Collections.addAll(pids, names);
+        }
+        return pids;
+    }
+
+    /**
+     * @return the environment of a process, or an empty map if the process is gone or
+     *         belongs to another user
+     */
+    private static Map<String, String> readEnvironment(String pid)
+    {
+        Map<String, String> environment = new TreeMap<>();
+        byte[] bytes;
+        try
+        {
+            bytes = Files.readAllBytes(new File(PROC, pid + "/environ").toPath());
+        }
+        catch (IOException e)
+        {
+            return environment;
+        }
+        for (String entry : new String(bytes, StandardCharsets.UTF_8).split("\0"))
+        {
+            int index = entry.indexOf('=');
+            if (index > 0)
+            {
+                environment.put(entry.substring(0, index), entry.substring(index + 1));
+            }
+        }
+        return environment;
+    }
+
+    /**
+     * Sends SIGKILL to processes, which cannot be done from Java 8 for processes it did not start
+     */
+    private static void kill(List<String> pids)
+    {
+        List<String> command = new ArrayList<>();
+        command.add("kill");
+        command.add("-KILL");
+        command.addAll(pids);
+        try
+        {
+            Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+            // a process that died meanwhile makes kill fail, which is fine
+            process.getInputStream().close();
+            process.waitFor();
+        }
+        catch (IOException e)
+        {
+            log.error("killing " + pids + " says " + e.getMessage(), e);
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -13,22 +13,33 @@
 package cvc;
 
 import cvc.Contracts.*;
-import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
 import org.apache.log4j.Logger;
+import org.glassfish.jersey.media.sse.EventOutput;
+import org.glassfish.jersey.media.sse.OutboundEvent;
+import org.glassfish.jersey.media.sse.SseFeature;
+import org.glassfish.jersey.server.ChunkedOutput;
 
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpSession;
 import javax.ws.rs.*;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.CompletionCallback;
+import javax.ws.rs.container.Suspended;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Request;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.Response.Status;
 import java.io.File;
-import java.io.FileFilter;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.charset.Charset;
 import java.util.*;
-import java.util.concurrent.Callable;
-import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
 
 @Path("")
@@ -38,6 +49,11 @@ public class RESTServices
 
     public static final String[] specialAttrs = {"code", "cvc"}; // these are attributes that cvc expects specifically
 
+    private static final int TOO_MANY_REQUESTS = 429;
+
+    // newline delimited JSON
+    private static final String NDJSON = "application/x-ndjson";
+
     @GET
     @Produces(MediaType.TEXT_HTML)
     public Response homePage()
@@ -67,70 +83,62 @@ public class RESTServices
     @GET
     @Path("/examples")
     @Produces({MediaType.APPLICATION_JSON, MediaType.APPLICATION_XML})
-    public Response getExamples()
+    public Response getExamples(@Context Request request, @Context HttpHeaders headers)
     {
-        try
-        {
-            File examplesDir = new File(CvcContext.examplesDirectory);
-
-            File [] folders = examplesDir.listFiles(new FileFilter()
-            {
-                @Override
-                public boolean accept(File file)
-                {
-                    return file.getParentFile().getName().equals(examplesDir.getName()) && file.isDirectory();
-                }
-            });
-
-            Kind kinds[] = new Kind[folders.length];
-
-            for (int i = 0; i < folders.length; i++)
-            {
-                kinds[i] = new Kind();
-                kinds[i].name  = folders[i].getName();
-                kinds[i].names = folders[i].list();
-            }
-
-            Examples examples = new Examples();
-
-            examples.kinds = kinds;
-
-            return Response.ok().entity(examples).build();
-        }
-        catch (Exception e)
+        ExamplesCatalog catalog = ExamplesCatalog.get();
+        if (catalog == null)
         {
-            return Response.status(Status.INTERNAL_SERVER_ERROR)
-                    .entity(e.getMessage()).build();
+            return Response.status(Status.SERVICE_UNAVAILABLE)
+                    .entity("the examples are not loaded").build();
         }
+        return catalog.getExamples().respond(request, headers);
     }
 
     @GET
     @Path("/examples/{kind}/{example}")
     @Produces({MediaType.APPLICATION_JSON, MediaType.APPLICATION_XML})
-    public Response getExample(@PathParam("kind") String kind, @PathParam("example") String example)
+    public Response getExample(@PathParam("kind") String kind, @PathParam("example") String example,
+                               @Context Request request, @Context HttpHeaders headers)
     {
-        try
+        ExamplesCatalog catalog = ExamplesCatalog.get();
+        if (catalog == null)
         {
-            String path = kind + "/" + example;
-            File exampleDir = new File(new File(CvcContext.examplesDirectory), path);
-
-            if (! exampleDir.exists())
-            {
-                return Response.status(Status.NOT_FOUND)
-                        .entity("could not find example with example: " + example)
-                        .build();
-            }
-
-            File codeFile = new File(exampleDir, example + ".txt");
-
-            Input input = new Input();
+            return Response.status(Status.SERVICE_UNAVAILABLE)
+                    .entity("the examples are not loaded").build();
+        }
 
-            input.code = FileUtils.readFileToString(codeFile, Charset.defaultCharset());
+        ExamplesCatalog.Representation representation = catalog.getExample(kind, example);
+        if (representation == null)
+        {
+            return Response.status(Status.NOT_FOUND)
+                    .entity("could not find example with example: " + example)
+                    .build();
+        }
+        return representation.respond(request, headers);
+    }
 
-            return Response.ok().entity(input).build();
+    /**
+     * Reloads the examples after they were changed on the server, which requires the admin key
+     *
+     * @param apiKey the admin key
+     */
+    @POST
+    @Path("/admin/reloadExamples")
+    @Produces(MediaType.TEXT_PLAIN)
+    public Response reloadExamples(@HeaderParam(Constants.API_KEY_HEADER) String apiKey)
+    {
+        if (!isAdmin(apiKey))
+        {
+            return Response.status(Status.FORBIDDEN).entity("admin key required").build();
+        }
+        try
+        {
+            ExamplesCatalog catalog = ExamplesCatalog.load(CvcContext.examplesDirectory);
+            return Response.ok().entity("loaded " + catalog.size() + " examples").build();
         }
         catch (Exception e)
         {
+            log.error("reloadExamples says " + e.getMessage(), e);
             return Response.status(Status.INTERNAL_SERVER_ERROR)
                     .entity(e.getMessage()).build();
         }
@@ -157,7 +165,10 @@ public class RESTServices
                 job.jobId = Constants.tempPrefix + UUID.randomUUID().toString();
             }
 
-            CvcClient.saveJob(job.jobId, job.code);
+            // a saved job is kept on disk
+            JobStore store = CvcContext.getJobStore();
+            store.create(job.jobId, job.code);
+            store.persist(job.jobId);
 
             JobInformation information = new JobInformation();
             information.jobId = job.jobId;
@@ -174,13 +185,14 @@ public class RESTServices
      * Submits code for starting a new CvcContext job. A job ID for referencing the job created by this request will be returns.
      *
      * @param input The request form sent by the client
+     * @param request The http request, used to identify the client for fair scheduling
      * @return The job ID of this job as a string
      */
     @POST
     @Path("/run")
     @Consumes({MediaType.APPLICATION_JSON, MediaType.APPLICATION_XML})
     @Produces({MediaType.APPLICATION_JSON, MediaType.APPLICATION_XML})
-    public Response verify(Input input)
+    public Response verify(Input input, @Context HttpServletRequest request)
     {
         try
         {
@@ -190,50 +202,57 @@ public class RESTServices
                 input.jobId = Constants.tempPrefix + UUID.randomUUID().toString();
             }
 
-
-
-            List<String> args = new ArrayList<>();
-            for (Map.Entry<String, String> pair : input.arguments.entrySet())
+            if (input.portfolio != null && input.portfolio.length > 0)
             {
-                String key = pair.getKey();
-                if (Util.containsIgnoreCase(specialAttrs, key))
-                {
-                    continue; //we handle the special attrs differently
-                }
+                return runPortfolio(input, request);
+            }
 
-                String value = pair.getValue();
+            List<String> args;
+            try
+            {
+                args = CvcClient.getArguments(input.arguments);
+            }
+            catch (IllegalArgumentException e)
+            {
+                return Response.status(Status.BAD_REQUEST)
+                        .entity(e.getMessage())
+                        .build();
+            }
 
-                if(! Validator.isArgValid(key, value))
-                {
-                    return Response.status(Status.BAD_REQUEST)
-                            .entity("Invalid argument: \"" + key + ": " + value + "\"")
-                            .build();
-                }
+            JobTask future = CvcClient.prepareJob(input.jobId, input.code, args, input.useCache);
+            if (future == null)
+            {
+                log.info("got this cached job ID = " + input.jobId);
 
-                Argument argument = CvcContext.cvcArguments.get(key);
-                if (value == null || value.isEmpty())
-                {
-                    log.debug("found flag " + key);
-                    args.add(argument.prefix + key);
-                } else
-                {
-                    log.debug("found arg " + key + " = " + value);
-                    //otherwise, add the name and value
-                    args.add(argument.prefix + key);
-                    args.add(value);
-                }
+                JobInformation information = new JobInformation();
+                information.jobId = input.jobId;
+                return Response.ok().entity(information).build();
             }
 
-            Callable<Void> task = () -> CvcClient.createJob(input.jobId, input.code, args);
-
             // asynchronously submit the task
-            Future<Void> future = CvcContext.getCvcExecutorService().submit(task);
-            CvcContext.runningTasks.put(input.jobId, future);
+            JobScheduler scheduler = CvcContext.getJobScheduler();
+            int position;
+            try
+            {
+                JobFeatures features = JobFeatures.of(input.code, input.arguments);
+                position = scheduler.submit(input.jobId, getClient(request), features, future);
+            }
+            catch (RejectedExecutionException e)
+            {
+                JobRegistry.remove(input.jobId);
+                CvcContext.runningTasks.remove(input.jobId);
+                return Response.status(TOO_MANY_REQUESTS)
+                        .header(HttpHeaders.RETRY_AFTER, scheduler.getRetryAfter())
+                        .entity(e.getMessage())
+                        .build();
+            }
 
             System.out.println("got this job ID = " + input.jobId);
 
             JobInformation information = new JobInformation();
             information.jobId = input.jobId;
+            information.queuePosition = position;
+            information.estimatedStartTime = System.currentTimeMillis() + scheduler.estimateWait(position);
             return Response.ok().entity((information)).build();
         }
         catch (Exception e)
@@ -245,6 +264,217 @@ public class RESTServices
         }
     }
 
+    /**
+     * Runs a job with each configuration of its portfolio in parallel
+     */
+    private static Response runPortfolio(Input input, HttpServletRequest request) throws IOException
+    {
+        if (input.portfolio.length > CvcContext.maxPortfolioSize)
+        {
+            return Response.status(Status.BAD_REQUEST)
+                    .entity("The portfolio has more than " + CvcContext.maxPortfolioSize + " configurations")
+                    .build();
+        }
+
+        try
+        {
+            Portfolio.submit(getClient(request), input);
+        }
+        catch (IllegalArgumentException e)
+        {
+            return Response.status(Status.BAD_REQUEST)
+                    .entity(e.getMessage())
+                    .build();
+        }
+        catch (RejectedExecutionException e)
+        {
+            return Response.status(TOO_MANY_REQUESTS)
+                    .header(HttpHeaders.RETRY_AFTER, CvcContext.getJobScheduler().getRetryAfter())
+                    .entity(e.getMessage())
+                    .build();
+        }
+
+        log.info("got this portfolio job ID = " + input.jobId);
+
+        JobInformation information = new JobInformation();
+        information.jobId = input.jobId;
+        return Response.ok().entity(information).build();
+    }
+
+    /**
+     * Reports the result and runtime of each configuration of a portfolio job,
+     * and which configuration won
+     *
+     * @param id the id of the portfolio job
+     */
+    @GET
+    @Path("/portfolio/{id}")
+    @Produces({MediaType.APPLICATION_JSON, MediaType.APPLICATION_XML})
+    public Response getPortfolioReport(@PathParam("id") String id)
+    {
+        Portfolio portfolio = Portfolio.get(id);
+        if (portfolio == null)
+        {
+            return Response.status(Status.NOT_FOUND)
+                    .entity("could not find portfolio job with id: " + id)
+                    .build();
+        }
+        return Response.ok().entity(portfolio.getReport()).build();
+    }
+
+    /**
+     * Submits many jobs in one request. The jobs are queued like jobs submitted with /run,
+     * except that the jobs that do not fit in the queue wait in the batch instead of being rejected.
+     * A batch is rejected with 429 if the client has too many unfinished batches, or all the
+     * batches too many unfinished jobs.
+     *
+     * @param batch   the jobs
+     * @param request The http request, used to identify the client for fair scheduling
+     * @return the id of the batch and the ids of its jobs in the order of the inputs
+     */
+    @POST
+    @Path("/runBatch")
+    @Consumes({MediaType.APPLICATION_JSON, MediaType.APPLICATION_XML})
+    @Produces({MediaType.APPLICATION_JSON, MediaType.APPLICATION_XML})
+    public Response runBatch(Batch batch, @Context HttpServletRequest request)
+    {
+        try
+        {
+            if (batch.inputs == null || batch.inputs.length == 0)
+            {
+                return Response.status(Status.BAD_REQUEST)
+                        .entity("The batch has no inputs")
+                        .build();
+            }
+            if (batch.inputs.length > CvcContext.maxBatchSize)
+            {
+                return Response.status(Status.BAD_REQUEST)
+                        .entity("The batch has more than " + CvcContext.maxBatchSize + " inputs")
+                        .build();
+            }
+
+            JobBatch jobBatch;
+            try
+            {
+                jobBatch = JobBatch.submit(getClient(request), batch.inputs);
+            }
+            catch (IllegalArgumentException e)
+            {
+                return Response.status(Status.BAD_REQUEST)
+                        .entity(e.getMessage())
+                        .build();
+            }
+            catch (RejectedExecutionException e)
+            {
+                return Response.status(TOO_MANY_REQUESTS)
+                        .header(HttpHeaders.RETRY_AFTER, CvcContext.getJobScheduler().getRetryAfter())
+                        .entity(e.getMessage())
+                        .build();
+            }
+
+            log.info("got this batch ID = " + jobBatch.getBatchId());
+
+            BatchInformation information = new BatchInformation();
+            information.batchId = jobBatch.getBatchId();
+            information.jobIds = jobBatch.getJobIds();
+            return Response.ok().entity(information).build();
+        }
+        catch (Exception e)
+        {
+            log.error("runBatch says " + e.getMessage(), e);
+            return Response.status(Status.INTERNAL_SERVER_ERROR)
+                    .entity(e.getMessage())
+                    .build();
+        }
+    }
+
+    @GET
+    @Path("/batchStatus/{id}")
+    @Produces({MediaType.APPLICATION_JSON, MediaType.APPLICATION_XML})
+    public Response getBatchStatus(@PathParam("id") String id)
+    {
+        JobBatch batch = JobBatch.get(id);
+        if (batch == null)
+        {
+            return Response.status(Status.NOT_FOUND)
+                    .entity("could not find batch with id: " + id)
+                    .build();
+        }
+        return Response.ok().entity(batch.getStatus()).build();
+    }
+
+    /**
+     * Streams the results of the jobs of a batch as newline delimited JSON.
+     * Each line is the {@link RawResults} of one job, sent when the job finishes, and the
+     * response ends after the last job.
+     *
+     * @param id the id of the batch
+     */
+    @GET
+    @Path("/batchResults/{id}")
+    @Produces(NDJSON)
+    public Response streamBatchResults(@PathParam("id") String id)
+    {
+        JobBatch batch = JobBatch.get(id);
+        if (batch == null)
+        {
+            return Response.status(Status.NOT_FOUND)
+                    .entity("could not find batch with id: " + id)
+                    .build();
+        }
+
+        ChunkedOutput<String> output = new ChunkedOutput<>(String.class);
+        batch.streamResults(new JobBatch.Sink()
+        {
+            @Override
+            public void send(RawResults results) throws IOException
+            {
+                output.write(Util.jsonMapper.writeValueAsString(results) + "\n");
+            }
+
+            @Override
+            public void close()
+            {
+                try
+                {
+                    output.close();
+                }
+                catch (IOException e)
+                {
+                    log.warn("closing the results of batch " + id + " caught exception: " + e, e);
+                }
+            }
+        });
+        return Response.ok().entity(output).build();
+    }
+
+    /**
+     * @return true if the key is the admin key, which is never the case if no admin key is configured
+     */
+    private static boolean isAdmin(String apiKey)
+    {
+        return !Util.isNullOrEmpty(CvcContext.adminKey) && CvcContext.adminKey.equals(apiKey);
+    }
+
+    /**
+     * @return the API key of the client if it sent one, otherwise its session or its address
+     */
+    private static String getClient(HttpServletRequest request)
+    {
+        String apiKey = request.getHeader(Constants.API_KEY_HEADER);
+        if (!Util.isNullOrEmpty(apiKey))
+        {
+            return "key:" + apiKey;
+        }
+
+        HttpSession session = request.getSession(false);
+        if (session != null)
+        {
+            return "session:" + session.getId();
+        }
+        return "address:" + request.getRemoteAddr();
+    }
+
     @GET
     @Path("/getJob/{id}")
     @Produces({MediaType.APPLICATION_JSON, MediaType.APPLICATION_XML})
@@ -252,20 +482,17 @@ public class RESTServices
     {
         try
         {
-            File jobDir = new File(new File(CvcContext.jobsDirectory), id);
-
-            if (! jobDir.exists())
+            JobStore store = CvcContext.getJobStore();
+            if (! store.exists(id))
             {
                 return Response.status(Status.NOT_FOUND)
                         .entity("could not find job with id: " + id)
                         .build();
             }
 
-            File codeFile = new File(jobDir, Constants.CODE_FILE);
-
             Job job = new Job();
 
-            job.code = FileUtils.readFileToString(codeFile, Charset.defaultCharset());
+            job.code = store.getCode(id);
 
             return Response.ok().entity(job).build();
         }
@@ -276,16 +503,72 @@ public class RESTServices
         }
     }
 
+    /**
+     * Returns the state of a job from memory, without reading its output: QUEUED, RUNNING,
+     * COMPLETED, TIMED_OUT, CANCELLED or FAILED, with the times of the transitions, the exit
+     * code and the length of the output written so far.
+     * Jobs submitted before the service started are not found.
+     *
+     * @param id the id of the job
+     */
+    @GET
+    @Path("/status/{id}")
+    @Produces({MediaType.APPLICATION_JSON, MediaType.APPLICATION_XML})
+    public Response getStatus(@PathParam("id") String id)
+    {
+        JobStatus status = JobRegistry.getStatus(id);
+        if (status == null)
+        {
+            return Response.status(Status.NOT_FOUND)
+                    .entity("could not find job with id: " + id)
+                    .build();
+        }
+        return Response.ok().entity(status).build();
+    }
+
+    /**
+     * Returns the output of a job.
+     * With the query parameters stdout or stderr, only the output written since these offsets
+     * is returned, separately for each stream, with the offsets to pass to the next request.
+     * A negative offset is rejected with 400.
+     *
+     * @param id     the id of the job
+     * @param stdout the offset in the standard output to start from
+     * @param stderr the offset in the standard error to start from
+     */
     @GET
     @Path("/getRawResults/{id}")
     @Produces({MediaType.APPLICATION_JSON, MediaType.APPLICATION_XML})
-    public Response getRawResults(@PathParam("id") String id)
+    public Response getRawResults(@PathParam("id") String id,
+                                  @QueryParam("stdout") Long stdout,
+                                  @QueryParam("stderr") Long stderr)
     {
         try
         {
+            if (stdout != null || stderr != null)
+            {
+                if ((stdout != null && stdout < 0) || (stderr != null && stderr < 0))
+                {
+                    return Response.status(Status.BAD_REQUEST)
+                            .entity("The offsets must not be negative")
+                            .build();
+                }
+                if (!CvcClient.jobExists(id))
+                {
+                    return Response.status(Status.NOT_FOUND)
+                            .entity("could not find job with id: " + id)
+                            .build();
+                }
+
+                RawResults results = CvcClient.getRawResults(id, stdout == null ? 0 : stdout,
+                        stderr == null ? 0 : stderr);
+                results.jobId = id;
+                return Response.ok().entity(results).build();
+            }
+
             RawResults results = CvcClient.getRawResults(id);
             results.jobId = id;
-            results.jobFinished = ! CvcContext.runningTasks.containsKey(id);
+            results.jobFinished = JobRegistry.isFinished(id);
             return Response.ok().entity(results).build();
         }
         catch (Exception e)
@@ -294,7 +577,260 @@ public class RESTServices
         }
     }
 
-    
+    /**
+     * Returns the output of a job once it finished, instead of polling getRawResults.
+     * The request is suspended without holding a container thread until the job finishes,
+     * or until the timeout expires, in which case the results have jobFinished false and no output.
+     *
+     * @param id      the id of the job
+     * @param timeout how long to wait in seconds, from 1 to {@link CvcContext#maxAwaitSeconds}
+     */
+    @GET
+    @Path("/awaitResult/{id}")
+    @Produces({MediaType.APPLICATION_JSON, MediaType.APPLICATION_XML})
+    public void awaitResult(@PathParam("id") String id,
+                            @QueryParam("timeout") @DefaultValue("30") long timeout,
+                            @Suspended AsyncResponse response)
+    {
+        if (!CvcClient.jobExists(id))
+        {
+            response.resume(Response.status(Status.NOT_FOUND)
+                    .entity("could not find job with id: " + id)
+                    .build());
+            return;
+        }
+
+        // listeners must not block, so the results are read on the streaming service
+        Consumer<String> listener = jobId -> CvcContext.getStreamingService().execute(() ->
+        {
+            try
+            {
+                RawResults results = CvcClient.getRawResults(jobId);
+                results.jobId = jobId;
+                results.jobFinished = true;
+                response.resume(results);
+            }
+            catch (Exception e)
+            {
+                log.error("awaitResult says " + e.getMessage(), e);
+                response.resume(Response.status(Status.INTERNAL_SERVER_ERROR).entity(e.getMessage()).build());
+            }
+        });
+
+        response.setTimeoutHandler(suspended ->
+        {
+            RawResults results = new RawResults();
+            results.jobId = id;
+            results.jobFinished = false;
+            suspended.resume(results);
+        });
+        // a timeout of 0 would suspend the request forever
+        response.setTimeout(Math.max(1, Math.min(timeout, CvcContext.maxAwaitSeconds)), TimeUnit.SECONDS);
+        // the listener is not needed once the response is sent, e.g. after the timeout
+        response.register((CompletionCallback) throwable -> JobCompletion.removeListener(id, listener));
+
+        // called right away if the job already finished
+        JobCompletion.addListener(id, listener);
+    }
+
+    /**
+     * Streams the output of a job as Server-Sent Events while it runs.
+     * Each event carries an {@link OutputChunk} and has the id "stdoutOffset:stderrOffset",
+     * so a client that reconnects with the Last-Event-ID header resumes where it left off.
+     * A malformed Last-Event-ID is ignored in favor of the query offsets, and negative query
+     * offsets are rejected with 400.
+     * The last event is named "finished".
+     *
+     * @param id     the id of the job
+     * @param stdout the offset in the standard output to start from
+     * @param stderr the offset in the standard error to start from
+     */
+    @GET
+    @Path("/streamResults/{id}")
+    @Produces(SseFeature.SERVER_SENT_EVENTS)
+    public Response streamResults(@PathParam("id") String id,
+                                  @QueryParam("stdout") @DefaultValue("0") long stdout,
+                                  @QueryParam("stderr") @DefaultValue("0") long stderr,
+                                  @HeaderParam(SseFeature.LAST_EVENT_ID_HEADER) String lastEventId)
+    {
+        try
+        {
+            if (!CvcClient.jobExists(id))
+            {
+                return Response.status(Status.NOT_FOUND)
+                        .entity("could not find job with id: " + id)
+                        .build();
+            }
+
+            if (stdout < 0 || stderr < 0)
+            {
+                return Response.status(Status.BAD_REQUEST)
+                        .entity("The offsets must not be negative")
+                        .build();
+            }
+
+            long[] offsets = {stdout, stderr};
+            String[] ids = lastEventId == null ? new String[0] : lastEventId.split(":", -1);
+            if (ids.length == 2)
+            {
+                Long stdoutOffset = OutputStreamer.parseOffset(ids[0]);
+                Long stderrOffset = OutputStreamer.parseOffset(ids[1]);
+                if (stdoutOffset != null && stderrOffset != null)
+                {
+                    offsets[0] = stdoutOffset;
+                    offsets[1] = stderrOffset;
+                }
+            }
+
+            EventOutput eventOutput = new EventOutput();
+            OutputStreamer.start(id, offsets[0], offsets[1], new OutputStreamer.Sink()
+            {
+                @Override
+                public void send(OutputChunk chunk) throws IOException
+                {
+                    OutboundEvent.Builder builder = new OutboundEvent.Builder();
+                    if (chunk.jobFinished)
+                    {
+                        builder.name("finished");
+                    }
+                    else
+                    {
+                        builder.name(chunk.stream);
+                        offsets[chunk.stream.equals(OutputStreamer.STDOUT) ? 0 : 1] = chunk.nextOffset;
+                    }
+                    builder.id(offsets[0] + ":" + offsets[1]);
+                    builder.mediaType(MediaType.APPLICATION_JSON_TYPE);
+                    builder.data(OutputChunk.class, chunk);
+                    eventOutput.write(builder.build());
+                }
+
+                @Override
+                public void close()
+                {
+                    try
+                    {
+                        eventOutput.close();
+                    }
+                    catch (IOException e)
+                    {
+                        log.warn("closing the stream of job " + id + " caught exception: " + e, e);
+                    }
+                }
+            });
+            return Response.ok().entity(eventOutput).build();
+        }
+        catch (Exception e)
+        {
+            return Response.status(Status.INTERNAL_SERVER_ERROR)
+                    .entity(e.getMessage()).build();
+        }
+    }
+
+    /**
+     * Runs the bundled examples and compares the report with the baseline.
+     * The request needs the admin key in the API key header.
+     *
+     * @param filter       a regular expression found in "kind/name" of the examples to run, or all examples
+     * @param concurrency  the number of examples run at the same time
+     * @param saveBaseline whether the report replaces the baseline
+     */
+    @POST
+    @Path("/admin/runExamples")
+    @Produces({MediaType.APPLICATION_JSON, MediaType.APPLICATION_XML})
+    public void runExamples(@QueryParam("filter") String filter,
+                            @QueryParam("concurrency") @DefaultValue("1") int concurrency,
+                            @QueryParam("saveBaseline") @DefaultValue("false") boolean saveBaseline,
+                            @HeaderParam(Constants.API_KEY_HEADER) String apiKey,
+                            @Suspended AsyncResponse response)
+    {
+        if (!isAdmin(apiKey))
+        {
+            response.resume(Response.status(Status.FORBIDDEN).entity("admin key required").build());
+            return;
+        }
+        if (concurrency < 1 || concurrency > CvcContext.maxThreads)
+        {
+            response.resume(Response.status(Status.BAD_REQUEST)
+                    .entity("concurrency must be between 1 and " + CvcContext.maxThreads).build());
+            return;
+        }
+
+        ExampleRunner.Options options = new ExampleRunner.Options();
+        options.filter = filter;
+        options.concurrency = concurrency;
+        options.saveBaseline = saveBaseline;
+        options.report = new File(CvcContext.examplesReport);
+        options.baseline = new File(CvcContext.examplesBaseline);
+
+        // the run takes minutes, so it does not hold a container thread
+        new Thread(() ->
+        {
+            try
+            {
+                response.resume(Response.ok().entity(ExampleRunner.run(options)).build());
+            }
+            catch (IllegalStateException e)
+            {
+                response.resume(Response.status(Status.CONFLICT).entity(e.getMessage()).build());
+            }
+            catch (IllegalArgumentException e)
+            {
+                response.resume(Response.status(Status.BAD_REQUEST).entity(e.getMessage()).build());
+            }
+            catch (Exception e)
+            {
+                log.error("runExamples says " + e.getMessage(), e);
+                response.resume(Response.status(Status.INTERNAL_SERVER_ERROR).entity(e.getMessage()).build());
+            }
+        }, "runExamples").start();
+    }
+
+    /**
+     * The resource usage of the jobs that ran under runlim, per input language and per kind of the examples
+     */
+    @GET
+    @Path("/usage")
+    @Produces({MediaType.APPLICATION_JSON, MediaType.APPLICATION_XML})
+    public Response getUsageStatistics()
+    {
+        return Response.ok().entity(UsageStatistics.getReport()).build();
+    }
+
+    /**
+     * The counters and latency histograms of the service in the Prometheus text format
+     */
+    @GET
+    @Path("/metrics")
+    @Produces(Metrics.CONTENT_TYPE)
+    public Response getMetrics()
+    {
+        return Response.ok().entity(Metrics.write()).build();
+    }
+
+    @GET
+    @Path("/queue")
+    @Produces({MediaType.APPLICATION_JSON, MediaType.APPLICATION_XML})
+    public Response getQueueStatistics()
+    {
+        return Response.ok().entity(CvcContext.getJobScheduler().getStatistics()).build();
+    }
+
+    @GET
+    @Path("/scheduling")
+    @Produces({MediaType.APPLICATION_JSON, MediaType.APPLICATION_XML})
+    public Response getSchedulingReport()
+    {
+        return Response.ok().entity(CvcContext.getJobScheduler().getSchedulingReport()).build();
+    }
+
+    @GET
+    @Path("/cache")
+    @Produces({MediaType.APPLICATION_JSON, MediaType.APPLICATION_XML})
+    public Response getCacheStatistics()
+    {
+        return Response.ok().entity(ResultCache.getStatistics()).build();
+    }
+
     @GET
     @Path("/cancelJob/{id}")
     @Produces({MediaType.TEXT_PLAIN})
@@ -0,0 +1,219 @@
+/* This file is part of the cvc-webservices.
+ *  Copyright (c) 2018 by the Board of Trustees of the University of Iowa
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you
+ *  may not use this file except in compliance with the License.  You
+ *  may obtain a copy of the License at
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package cvc;
+
+import cvc.Contracts.CacheStatistics;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A size bounded cache of solver outputs keyed by the hash of the code, the
+ * normalized arguments and the identity of the cvc binary.
+ * Entries are evicted in least recently used order once the total size of the
+ * cached outputs exceeds the configured capacity.
+ */
+
+public class ResultCache
+{
+    /**
+     * The sanitized outputs of a finished job
+     */
+    public static class Entry
+    {
+        public final byte[] results;
+        public final byte[] errors;
+
+        public Entry(byte[] results, byte[] errors)
+        {
+            this.results = results;
+            this.errors = errors;
+        }
+
+        public long size()
+        {
+            return results.length + errors.length;
+        }
+    }
+
+    private static final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    private static final AtomicLong hits = new AtomicLong();
+    private static final AtomicLong misses = new AtomicLong();
+
+    private static long size; // bytes, guarded by entries
+    private static long capacity; // bytes
+
+    public static void setCapacity(long bytes)
+    {
+        synchronized (entries)
+        {
+            capacity = bytes;
+            evict();
+        }
+    }
+
+    public static boolean isEnabled()
+    {
+        return capacity > 0;
+    }
+
+    /**
+     * @param code the code of the job
+     * @param args the normalized cvc arguments of the job
+     * @return a hex string that identifies the outcome of running the code with the given arguments
+     */
+    public static String key(String code, List<String> args)
+    {
+        try
+        {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            update(digest, CvcContext.cvcCommand);
+            update(digest, binaryIdentity());
+            update(digest, CvcContext.softTimeout);
+            for (String argument : args)
+            {
+                update(digest, argument);
+            }
+            update(digest, code);
+
+            StringBuilder builder = new StringBuilder();
+            for (byte b : digest.digest())
+            {
+                builder.append(String.format("%02x", b));
+            }
+            return builder.toString();
+        }
+        catch (NoSuchAlgorithmException exception)
+        {
+            throw new IllegalStateException(exception);
+        }
+    }
+
+    private static void update(MessageDigest digest, String value)
+    {
+        if (value != null)
+        {
+            digest.update(value.getBytes(StandardCharsets.UTF_8));
+        }
+        // separator so that ("ab", "c") and ("a", "bc") hash differently
+        digest.update((byte) 0);
+    }
+
+    /**
+     * @return the path, size and modification time of every executable named in cvcCommand,
+     * so that replacing the cvc binary invalidates the cache
+     */
+    private static String binaryIdentity()
+    {
+        StringBuilder builder = new StringBuilder();
+        for (String token : CvcContext.cvcCommand.split(" "))
+        {
+            File file = new File(token);
+            if (file.isAbsolute() && file.isFile())
+            {
+                builder.append(token).append(':')
+                        .append(file.length()).append(':')
+                        .append(file.lastModified()).append(';');
+            }
+        }
+        return builder.toString();
+    }
+
+    public static Entry get(String key)
+    {
+        Entry entry;
+        synchronized (entries)
+        {
+            entry = entries.get(key);
+        }
+
+        if (entry == null)
+        {
+            misses.incrementAndGet();
+        }
+        else
+        {
+            hits.incrementAndGet();
+        }
+        return entry;
+    }
+
+    public static void put(String key, Entry entry)
+    {
+        synchronized (entries)
+        {
+            if (entry.size() > capacity)
+            {
+                return;
+            }
+
+            Entry previous = entries.put(key, entry);
+            if (previous != null)
+            {
+                size -= previous.size();
+            }
+            size += entry.size();
+            evict();
+        }
+    }
+
+    private static void evict()
+    {
+        Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+        while (size > capacity && iterator.hasNext())
+        {
+            size -= iterator.next().getValue().size();
+            iterator.remove();
+        }
+    }
+
+    /**
+     * Determines whether the outputs of a finished job can be replayed for later requests.
+     * Jobs killed by the hard timeout, jobs that failed, jobs interrupted by the
+     * soft timeout (--tlimit), and jobs whose output was truncated are not cached.
+     *
+     * @param exitValue the exit value of the process
+     * @param output    the combined output of the process
+     */
+    public static boolean isCacheable(int exitValue, String output)
+    {
+        // cvc4 exits with 10 for sat and 20 for unsat
+        if (exitValue != 0 && exitValue != 10 && exitValue != 20)
+        {
+            return false;
+        }
+        return !output.contains("interrupted by timeout") && !output.contains(OutputLimit.TRUNCATION_MARKER);
+    }
+
+    public static CacheStatistics getStatistics()
+    {
+        CacheStatistics statistics = new CacheStatistics();
+        synchronized (entries)
+        {
+            statistics.entries = entries.size();
+            statistics.size = size;
+            statistics.capacity = capacity;
+        }
+        statistics.hits = hits.get();
+        statistics.misses = misses.get();
+        return statistics;
+    }
+}
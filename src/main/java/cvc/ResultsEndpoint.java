@@ -13,43 +13,57 @@
 package cvc;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import cvc.Contracts.OutputChunk;
 import cvc.Contracts.RawResults;
 
 import javax.websocket.*;
 import javax.websocket.server.PathParam;
 import javax.websocket.server.ServerEndpoint;
 import java.io.IOException;
+import java.util.List;
+import java.util.function.Consumer;
 
 @ServerEndpoint("/getResults/{id}")
 public class ResultsEndpoint
 {
+    private static final String LISTENER = "listener";
+    private static final String STREAMER = "streamer";
+
+    /**
+     * Sends the results of the job when it finishes.
+     * With the query parameter stream=true, the output is sent as {@link cvc.Contracts.OutputChunk}s
+     * while the job runs, starting from the optional query parameters stdout and stderr offsets.
+     */
     @OnOpen
     public void onOpen(@PathParam("id") String id, Session session, EndpointConfig config)
     {
+        Metrics.webSocketSessions.increment();
         try
         {
-            RawResults results = CvcClient.getRawResults(id);
-            if (results != null)
+            if (CvcClient.jobExists(id))
             {
-                // wait until the job finishes
-                while (CvcContext.runningTasks.containsKey(id))
+                if (Boolean.parseBoolean(getParameter(session, "stream", "false")))
                 {
-                    // sleep for one second
-                    Thread.sleep(1000);
+                    Long stdoutOffset = OutputStreamer.parseOffset(getParameter(session, OutputStreamer.STDOUT, "0"));
+                    Long stderrOffset = OutputStreamer.parseOffset(getParameter(session, OutputStreamer.STDERR, "0"));
+                    if (stdoutOffset == null || stderrOffset == null)
+                    {
+                        session.getBasicRemote().sendText("The offsets must be numbers that are not negative");
+                        close(session);
+                        return;
+                    }
+                    OutputStreamer streamer = OutputStreamer.start(id, stdoutOffset, stderrOffset,
+                            new SessionSink(session));
+                    session.getUserProperties().put(STREAMER, streamer);
+                    return;
                 }
 
-                results = CvcClient.getRawResults(id);
-                results.jobId = id;
-                results.jobFinished = true;
-
-                // convert the results into json
-                ObjectMapper mapper = new ObjectMapper();
-                String json = mapper.writeValueAsString(results);
-
-                // send the results
-                session.getBasicRemote().sendText(json);
-                // close the connection
-                session.close();
+                // send the results when the job finishes without holding the container thread, and
+                // on the streaming service, because listeners run on the thread that finished the job
+                Consumer<String> listener = jobId -> CvcContext.getStreamingService()
+                        .execute(() -> sendResults(jobId, session));
+                session.getUserProperties().put(LISTENER, listener);
+                JobCompletion.addListener(id, listener);
             }
             else
             {
@@ -66,6 +80,74 @@ public class ResultsEndpoint
         }
     }
 
+    private static String getParameter(Session session, String name, String defaultValue)
+    {
+        List<String> values = session.getRequestParameterMap().get(name);
+        return values == null || values.isEmpty() ? defaultValue : values.get(0);
+    }
+
+    private static class SessionSink implements OutputStreamer.Sink
+    {
+        private final Session session;
+        private final ObjectMapper mapper = new ObjectMapper();
+
+        SessionSink(Session session)
+        {
+            this.session = session;
+        }
+
+        @Override
+        public void send(OutputChunk chunk) throws IOException
+        {
+            session.getBasicRemote().sendText(mapper.writeValueAsString(chunk));
+        }
+
+        @Override
+        public void close()
+        {
+            ResultsEndpoint.close(session);
+        }
+    }
+
+    private static void sendResults(String id, Session session)
+    {
+        if (!session.isOpen())
+        {
+            return;
+        }
+
+        try
+        {
+            RawResults results = CvcClient.getRawResults(id);
+            results.jobId = id;
+            results.jobFinished = true;
+
+            // convert the results into json
+            ObjectMapper mapper = new ObjectMapper();
+            String json = mapper.writeValueAsString(results);
+
+            // send the results, then close the connection
+            session.getAsyncRemote().sendText(json, result -> close(session));
+        }
+        catch (Exception e)
+        {
+            e.printStackTrace();
+            close(session);
+        }
+    }
+
+    private static void close(Session session)
+    {
+        try
+        {
+            session.close();
+        }
+        catch (IOException e)
+        {
+            e.printStackTrace();
+        }
+    }
+
     @OnMessage
     public void onMessage(Session session, String message)
     {
@@ -77,8 +159,20 @@ public class ResultsEndpoint
     }
 
     @OnClose
-    public void onClose(Session session, CloseReason reason)
+    @SuppressWarnings("unchecked")
+    public void onClose(@PathParam("id") String id, Session session, CloseReason reason)
     {
+        Metrics.webSocketSessions.decrement();
+        Consumer<String> listener = (Consumer<String>) session.getUserProperties().get(LISTENER);
+        if (listener != null)
+        {
+            JobCompletion.removeListener(id, listener);
+        }
+        OutputStreamer streamer = (OutputStreamer) session.getUserProperties().get(STREAMER);
+        if (streamer != null)
+        {
+            streamer.stop();
+        }
         System.out.println("Session " + session.getId() + " has ended");
         System.out.println(reason.toString());
     }
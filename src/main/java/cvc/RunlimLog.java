@@ -0,0 +1,144 @@
+/* This file is part of the cvc-webservices.
+ *  Copyright (c) 2018 by the Board of Trustees of the University of Iowa
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you
+ *  may not use this file except in compliance with the License.  You
+ *  may obtain a copy of the License at
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package cvc;
+
+import cvc.Contracts.Usage;
+
+import java.nio.charset.Charset;
+
+/**
+ * The summary that runlim writes to the log of a job when the process ends, e.g.
+ * <pre>
+ * [runlim] time limit:		90 seconds
+ * [runlim] real time limit:	90 seconds
+ * [runlim] space limit:		50 MB
+ * ...
+ * [runlim] status:		ok
+ * [runlim] result:		0
+ * [runlim] real:			0.02 seconds
+ * [runlim] time:			0.01 seconds
+ * [runlim] space:			3.4 MB
+ * </pre>
+ * Fields missing from the log are null.
+ */
+
+public class RunlimLog
+{
+    private static final String PREFIX = "[runlim]";
+    private static final String OUT_OF_TIME = "out of time";
+    private static final String OUT_OF_MEMORY = "out of memory";
+
+    public String status; // ok, out of time, out of memory, signal(9), ...
+    public Integer result; // the exit code of the process
+    public Double real; // seconds
+    public Double time; // seconds
+    public Double space; // peak memory in megabytes
+    public Double timeLimit; // seconds
+    public Double realTimeLimit; // seconds
+    public Double spaceLimit; // megabytes
+
+    /**
+     * @param bytes the content of the log, which may be empty
+     */
+    public static RunlimLog parse(byte[] bytes)
+    {
+        RunlimLog log = new RunlimLog();
+        for (String line : new String(bytes, Charset.defaultCharset()).split("\n"))
+        {
+            int colon = line.indexOf(':');
+            if (!line.startsWith(PREFIX) || colon < 0)
+            {
+                continue;
+            }
+            String key = line.substring(PREFIX.length(), colon).trim();
+            String value = line.substring(colon + 1).trim();
+            switch (key)
+            {
+                case "status":
+                    log.status = value;
+                    break;
+                case "result":
+                    Double result = parseNumber(value);
+                    log.result = result == null ? null : result.intValue();
+                    break;
+                case "real":
+                    log.real = parseNumber(value);
+                    break;
+                case "time":
+                    log.time = parseNumber(value);
+                    break;
+                case "space":
+                    log.space = parseNumber(value);
+                    break;
+                case "time limit":
+                    log.timeLimit = parseNumber(value);
+                    break;
+                case "real time limit":
+                    log.realTimeLimit = parseNumber(value);
+                    break;
+                case "space limit":
+                    log.spaceLimit = parseNumber(value);
+                    break;
+                default:
+                    break;
+            }
+        }
+        return log;
+    }
+
+    /**
+     * @return the usage of the job, or null if the log has no status, e.g. because the job did not run under runlim
+     */
+    public Usage toUsage()
+    {
+        if (status == null)
+        {
+            return null;
+        }
+        Usage usage = new Usage();
+        usage.status = status;
+        usage.realTime = real;
+        usage.cpuTime = time;
+        usage.maxMemory = space;
+        usage.limit = getLimit();
+        return usage;
+    }
+
+    /**
+     * @return the limit that stopped the job, or null if none did
+     */
+    private String getLimit()
+    {
+        if (status.equals(OUT_OF_MEMORY))
+        {
+            return Usage.SPACE_LIMIT;
+        }
+        if (!status.equals(OUT_OF_TIME))
+        {
+            return null;
+        }
+        // runlim reports both time limits as out of time
+        boolean realTimeHit = realTimeLimit != null && real != null && real >= realTimeLimit;
+        boolean timeHit = timeLimit != null && time != null && time >= timeLimit;
+        return realTimeHit && !timeHit ? Usage.REAL_TIME_LIMIT : Usage.TIME_LIMIT;
+    }
+
+    /**
+     * @return the number that starts the value, e.g. 3.4 in "3.4 MB", or null
+     */
+    private static Double parseNumber(String value)
+    {
+        String number = value.split("\\s+")[0];
+        return Validator.isValidDouble(number) ? Double.valueOf(number) : null;
+    }
+}
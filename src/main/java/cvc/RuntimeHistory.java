@@ -0,0 +1,200 @@
+/* This file is part of the cvc-webservices.
+ *  Copyright (c) 2018 by the Board of Trustees of the University of Iowa
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you
+ *  may not use this file except in compliance with the License.  You
+ *  may obtain a copy of the License at
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package cvc;
+
+import cvc.Contracts.SchedulingReport;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Records the wall-clock runtimes of finished jobs by their {@link JobFeatures} and predicts
+ * the runtime of new jobs from them. The most recent jobs are kept to compare the
+ * predictions with the actual runtimes, and the cost-aware order with FIFO.
+ */
+
+public class RuntimeHistory
+{
+    // weight of the latest runtime in the moving averages
+    private static final double SMOOTHING = 0.2;
+
+    // the number of recent jobs kept for the report
+    private static final int WINDOW = 1000;
+
+    private static class Estimate
+    {
+        double runtime; // milliseconds
+        long count;
+    }
+
+    private static class Sample
+    {
+        final long arrival;
+        final long started;
+        final long runtime;
+        final long predicted;
+
+        Sample(long arrival, long started, long runtime, long predicted)
+        {
+            this.arrival = arrival;
+            this.started = started;
+            this.runtime = runtime;
+            this.predicted = predicted;
+        }
+    }
+
+    // guarded by this
+    private final Map<String, Estimate> estimates = new HashMap<>();
+    private final Sample[] samples = new Sample[WINDOW];
+    private int next;
+    private int size;
+
+    /**
+     * @param features the features of a job
+     * @param fallback the prediction if no job with similar features has finished
+     * @return the expected runtime of the job in milliseconds
+     */
+    public synchronized long predict(JobFeatures features, long fallback)
+    {
+        // use the most specific key that has a history
+        for (String key : features.getKeys())
+        {
+            Estimate estimate = estimates.get(key);
+            if (estimate != null)
+            {
+                return (long) estimate.runtime;
+            }
+        }
+        return fallback;
+    }
+
+    /**
+     * Records a finished job
+     *
+     * @param features  the features of the job
+     * @param arrival   the time the job was submitted
+     * @param started   the time the job started
+     * @param runtime   the runtime of the job in milliseconds
+     * @param predicted the runtime predicted when the job was submitted
+     */
+    public synchronized void record(JobFeatures features, long arrival, long started, long runtime, long predicted)
+    {
+        for (String key : features.getKeys())
+        {
+            Estimate estimate = estimates.computeIfAbsent(key, k -> new Estimate());
+            estimate.runtime = estimate.count == 0 ? runtime : estimate.runtime + SMOOTHING * (runtime - estimate.runtime);
+            estimate.count++;
+        }
+
+        samples[next] = new Sample(arrival, started, runtime, predicted);
+        next = (next + 1) % WINDOW;
+        size = Math.min(size + 1, WINDOW);
+    }
+
+    /**
+     * Compares the predictions with the actual runtimes of the recent jobs, and the measured
+     * latency with the latency of replaying the same jobs in FIFO and in cost-aware order.
+     *
+     * @param policy the current scheduling policy
+     * @param slots  the number of jobs running at the same time
+     * @param aging  the aging factor of the cost-aware order
+     */
+    public synchronized SchedulingReport getReport(String policy, int slots, double aging)
+    {
+        List<Sample> window = new ArrayList<>(Arrays.asList(samples).subList(0, size));
+        window.sort(Comparator.comparingLong(sample -> sample.arrival));
+
+        SchedulingReport report = new SchedulingReport();
+        report.policy = policy;
+        report.samples = window.size();
+        report.aging = aging;
+        if (window.isEmpty())
+        {
+            return report;
+        }
+
+        double absoluteError = 0;
+        double latency = 0;
+        for (Sample sample : window)
+        {
+            absoluteError += Math.abs(sample.predicted - sample.runtime);
+            latency += sample.started - sample.arrival + sample.runtime;
+        }
+        report.meanAbsoluteError = (long) (absoluteError / window.size());
+        report.meanLatency = (long) (latency / window.size());
+        report.simulatedFifoLatency = simulate(window, slots, 0, false);
+        report.simulatedCostAwareLatency = simulate(window, slots, aging, true);
+        return report;
+    }
+
+    /**
+     * Replays the jobs on the given number of slots
+     *
+     * @param window    the jobs ordered by arrival
+     * @param costAware whether to start the job with the lowest aged predicted runtime first,
+     *                  otherwise jobs start in arrival order
+     * @return the mean latency (queue wait plus runtime) in milliseconds
+     */
+    private static long simulate(List<Sample> window, int slots, double aging, boolean costAware)
+    {
+        PriorityQueue<Long> freeSlots = new PriorityQueue<>();
+        for (int i = 0; i < slots; i++)
+        {
+            freeSlots.add(window.get(0).arrival);
+        }
+
+        List<Sample> pending = new ArrayList<>();
+        double latency = 0;
+        int arrived = 0;
+        while (arrived < window.size() || !pending.isEmpty())
+        {
+            long time = freeSlots.poll();
+            if (pending.isEmpty())
+            {
+                time = Math.max(time, window.get(arrived).arrival);
+            }
+            while (arrived < window.size() && window.get(arrived).arrival <= time)
+            {
+                pending.add(window.get(arrived++));
+            }
+
+            Sample selected = pending.get(0);
+            if (costAware)
+            {
+                for (Sample sample : pending)
+                {
+                    if (score(sample, time, aging) < score(selected, time, aging))
+                    {
+                        selected = sample;
+                    }
+                }
+            }
+            pending.remove(selected);
+
+            long finished = time + selected.runtime;
+            latency += finished - selected.arrival;
+            freeSlots.add(finished);
+        }
+        return (long) (latency / window.size());
+    }
+
+    private static double score(Sample sample, long time, double aging)
+    {
+        return sample.predicted - aging * (time - sample.arrival);
+    }
+}
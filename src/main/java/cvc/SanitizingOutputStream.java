@@ -0,0 +1,120 @@
+/* This file is part of the cvc-webservices.
+ *  Copyright (c) 2018 by the Board of Trustees of the University of Iowa
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you
+ *  may not use this file except in compliance with the License.  You
+ *  may obtain a copy of the License at
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package cvc;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * Removes every occurrence of a byte sequence, e.g. the path of the job directory, from the
+ * bytes written through it. The bytes that may start an occurrence are held back until the
+ * following bytes show whether they do, so occurrences split between writes are removed too.
+ */
+
+public class SanitizingOutputStream extends FilterOutputStream
+{
+    private final byte[] pattern;
+    // failure[i] is the length of the longest proper prefix of pattern[0..i] that is also its suffix
+    private final int[] failure;
+    // the length of the prefix of the pattern that the last bytes written match, which is held back
+    private int matched;
+    private byte[] buffer = new byte[8192];
+
+    public SanitizingOutputStream(OutputStream out, byte[] pattern)
+    {
+        super(out);
+        this.pattern = pattern;
+        this.failure = new int[pattern.length];
+        for (int i = 1, length = 0; i < pattern.length; i++)
+        {
+            while (length > 0 && pattern[i] != pattern[length])
+            {
+                length = failure[length - 1];
+            }
+            if (pattern[i] == pattern[length])
+            {
+                length++;
+            }
+            failure[i] = length;
+        }
+    }
+
+    @Override
+    public void write(int b) throws IOException
+    {
+        write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int length) throws IOException
+    {
+        if (pattern.length == 0)
+        {
+            out.write(bytes, offset, length);
+            return;
+        }
+
+        // the held back bytes and the new bytes are at most this long
+        if (buffer.length < pattern.length + length)
+        {
+            buffer = Arrays.copyOf(buffer, pattern.length + length);
+        }
+
+        int count = 0;
+        for (int i = offset; i < offset + length; i++)
+        {
+            byte b = bytes[i];
+            while (matched > 0 && b != pattern[matched])
+            {
+                // release the held back bytes that can no longer start an occurrence
+                int next = failure[matched - 1];
+                System.arraycopy(pattern, 0, buffer, count, matched - next);
+                count += matched - next;
+                matched = next;
+            }
+
+            if (b == pattern[matched])
+            {
+                matched++;
+                if (matched == pattern.length)
+                {
+                    // drop the occurrence
+                    matched = 0;
+                }
+            }
+            else
+            {
+                buffer[count++] = b;
+            }
+        }
+
+        if (count > 0)
+        {
+            out.write(buffer, 0, count);
+        }
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        // the held back bytes are not followed by the rest of an occurrence
+        if (matched > 0)
+        {
+            out.write(pattern, 0, matched);
+            matched = 0;
+        }
+        out.close();
+    }
+}
@@ -0,0 +1,290 @@
+/* This file is part of the cvc-webservices.
+ *  Copyright (c) 2018 by the Board of Trustees of the University of Iowa
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you
+ *  may not use this file except in compliance with the License.  You
+ *  may obtain a copy of the License at
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package cvc;
+
+import org.apache.log4j.Logger;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Supervises the processes of the running jobs from a single event loop instead of a thread
+ * per job. Every tick the loop copies the output the processes wrote so far, runs the
+ * deadlines that expired, and finds the processes that exited. A process that exceeds the
+ * hard timeout is asked to stop, so that runlim can still write its log, and is killed with
+ * its process tree after a grace period.
+ * Finishing a job, which waits until its process tree is gone and its output is copied, runs
+ * on a small pool of completion threads, so a slow job never delays the loop.
+ * The input of a job is written by a writer thread of the engine, because a process that
+ * reads its input slowly would otherwise hold the thread that started it.
+ */
+
+public class SolverEngine
+{
+    private static final Logger log = Logger.getLogger(SolverEngine.class);
+
+    private static final long TICK = 10; // milliseconds
+    private static final long MIN_PUMP_BACKOFF = 100; // microseconds
+    private static final long MAX_PUMP_BACKOFF = 1000; // microseconds
+    private static final long WHEEL_TICK = 100; // milliseconds
+    private static final int WHEEL_SLOTS = 1024;
+    private static final long KILL_GRACE = 2000; // milliseconds
+    private static final int COMPLETION_THREADS = 2;
+
+    /**
+     * Called on a completion thread once the process of a job is gone and its output is copied
+     */
+    public interface Callback
+    {
+        /**
+         * @param state    COMPLETED, TIMED_OUT or CANCELLED
+         * @param exitCode the exit code of the process, or null unless the job completed
+         */
+        void finished(JobRegistry.State state, Integer exitCode);
+    }
+
+    private static class Running
+    {
+        final String jobId;
+        final Process process;
+        final OutputPump results;
+        final OutputPump errors;
+        final Callback callback;
+        final long started = System.nanoTime();
+        volatile boolean cancelled;
+        volatile boolean timedOut;
+        TimerWheel.Timeout softDeadline;
+        TimerWheel.Timeout hardDeadline;
+
+        Running(String jobId, Process process, OutputPump results, OutputPump errors, Callback callback)
+        {
+            this.jobId = jobId;
+            this.process = process;
+            this.results = results;
+            this.errors = errors;
+            this.callback = callback;
+        }
+    }
+
+    private final ProcessSupervisor supervisor;
+    private final long hardTimeout; // milliseconds
+    private final ConcurrentMap<String, Running> running = new ConcurrentHashMap<>();
+    private final TimerWheel wheel = new TimerWheel(WHEEL_TICK, WHEEL_SLOTS);
+    private final ScheduledExecutorService loop = Executors.newSingleThreadScheduledExecutor();
+    private final ExecutorService completions = Executors.newFixedThreadPool(COMPLETION_THREADS);
+    // kills wait until the process tree is gone, so they do not hold the completion threads
+    private final ExecutorService kills = Executors.newCachedThreadPool();
+    // at most one thread per process that is still reading its input
+    private final ExecutorService writers = Executors.newCachedThreadPool();
+
+    /**
+     * @param hardTimeout how long a process may run in milliseconds
+     */
+    public SolverEngine(ProcessSupervisor supervisor, long hardTimeout)
+    {
+        this.supervisor = supervisor;
+        this.hardTimeout = hardTimeout;
+        loop.scheduleWithFixedDelay(new RobustRunnable("solverEngine")
+        {
+            @Override
+            protected void dorun()
+            {
+                tick();
+            }
+        }, TICK, TICK, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Supervises the process of a job, which was started by the {@link ProcessSupervisor}
+     *
+     * @param results  where the standard output of the process is copied to, which is left open
+     * @param errors   where the standard error of the process is copied to, which is left open
+     * @param callback called once the job finished
+     */
+    public void start(String jobId, Process process, OutputStream results, OutputStream errors, Callback callback)
+    {
+        Running job = new Running(jobId, process,
+                new OutputPump(jobId, process.getInputStream(), results),
+                new OutputPump(jobId, process.getErrorStream(), errors), callback);
+        job.softDeadline = wheel.schedule(() ->
+        {
+            job.timedOut = true;
+            // runlim writes its log when it is stopped
+            job.process.destroy();
+        }, hardTimeout);
+        job.hardDeadline = wheel.schedule(() -> terminate(jobId), hardTimeout + KILL_GRACE);
+        running.put(jobId, job);
+    }
+
+    /**
+     * Writes the input of a supervised process and closes its standard input, without waiting for it
+     */
+    public void writeInput(String jobId, Process process, byte[] input)
+    {
+        writers.execute(new RobustRunnable("writeInput")
+        {
+            @Override
+            protected void dorun()
+            {
+                try (OutputStream stream = process.getOutputStream())
+                {
+                    stream.write(input);
+                }
+                catch (IOException e)
+                {
+                    // cvc exited before it read all the code, e.g. after a parse error
+                    log.debug("writing the code of job " + jobId + " says " + e.getMessage());
+                }
+            }
+        });
+    }
+
+    /**
+     * Kills the process tree of a job, which then finishes as CANCELLED
+     */
+    public void cancel(String jobId)
+    {
+        Running job = running.get(jobId);
+        if (job != null)
+        {
+            job.cancelled = true;
+            terminate(jobId);
+        }
+    }
+
+    /**
+     * Kills the process tree of a job without waiting for it, e.g. from an output of the job
+     */
+    public void terminate(String jobId)
+    {
+        kills.execute(new RobustRunnable("terminate")
+        {
+            @Override
+            protected void dorun()
+            {
+                supervisor.terminate(jobId);
+            }
+        });
+    }
+
+    /**
+     * @return the number of processes the engine supervises
+     */
+    public int getRunningCount()
+    {
+        return running.size();
+    }
+
+    private void tick()
+    {
+        wheel.advance();
+        // copies again while the processes write, so that a full pipe does not wait for the next tick,
+        // and backs off between the copies instead of spinning
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(TICK);
+        long backoff = MIN_PUMP_BACKOFF;
+        while (pump() && System.nanoTime() < deadline)
+        {
+            LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(backoff));
+            backoff = Math.min(backoff * 2, MAX_PUMP_BACKOFF);
+        }
+        for (Running job : running.values())
+        {
+            if (!job.process.isAlive())
+            {
+                running.remove(job.jobId);
+                job.softDeadline.cancel();
+                job.hardDeadline.cancel();
+                completions.execute(new RobustRunnable("finish")
+                {
+                    @Override
+                    protected void dorun()
+                    {
+                        finish(job);
+                    }
+                });
+            }
+        }
+    }
+
+    /**
+     * Copies the output the processes wrote so far
+     *
+     * @return true if any output was copied
+     */
+    private boolean pump()
+    {
+        boolean copied = false;
+        for (Running job : running.values())
+        {
+            try
+            {
+                copied |= job.results.pumpAvailable() + job.errors.pumpAvailable() > 0;
+            }
+            catch (Exception e)
+            {
+                log.error("copying the output of job " + job.jobId + " says " + e.getMessage(), e);
+            }
+        }
+        return copied;
+    }
+
+    private void finish(Running job)
+    {
+        Metrics.solverTime.recordSince(job.started);
+        // kills the children that outlived the process, which may keep its output open
+        supervisor.release(job.jobId);
+        try
+        {
+            job.results.drain();
+            job.errors.drain();
+        }
+        catch (Exception e)
+        {
+            log.error("copying the output of job " + job.jobId + " says " + e.getMessage(), e);
+        }
+
+        JobRegistry.State state;
+        Integer exitCode = null;
+        if (job.cancelled)
+        {
+            state = JobRegistry.State.CANCELLED;
+        }
+        else if (job.timedOut)
+        {
+            Metrics.jobsTimedOut.increment();
+            state = JobRegistry.State.TIMED_OUT;
+        }
+        else
+        {
+            Metrics.jobsCompleted.increment();
+            state = JobRegistry.State.COMPLETED;
+            exitCode = job.process.exitValue();
+        }
+        job.callback.finished(state, exitCode);
+    }
+
+    public void shutdown()
+    {
+        loop.shutdown();
+        completions.shutdown();
+        kills.shutdown();
+        writers.shutdown();
+    }
+}
@@ -0,0 +1,109 @@
+/* This file is part of the cvc-webservices.
+ *  Copyright (c) 2018 by the Board of Trustees of the University of Iowa
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you
+ *  may not use this file except in compliance with the License.  You
+ *  may obtain a copy of the License at
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package cvc;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * A hashed timer wheel for the deadlines of many jobs: scheduling and cancelling a timeout
+ * take constant time, and each tick only visits the timeouts of one slot.
+ * Timeouts can be scheduled and cancelled from any thread, but the wheel is advanced, and
+ * the timeouts run, on a single thread.
+ */
+
+public class TimerWheel
+{
+    public static class Timeout
+    {
+        private final Runnable task;
+        private final long deadline; // ticks
+        private volatile boolean cancelled;
+
+        private Timeout(Runnable task, long deadline)
+        {
+            this.task = task;
+            this.deadline = deadline;
+        }
+
+        public void cancel()
+        {
+            cancelled = true;
+        }
+    }
+
+    private final long tickMillis;
+    private final long started = System.currentTimeMillis();
+    private final List<List<Timeout>> slots = new ArrayList<>();
+    private final ConcurrentLinkedQueue<Timeout> added = new ConcurrentLinkedQueue<>();
+    private long tick; // the next tick to expire, only used by the advancing thread
+
+    /**
+     * @param tickMillis the resolution of the timeouts
+     * @param slotCount  the number of slots, so that one round of the wheel lasts slotCount ticks
+     */
+    public TimerWheel(long tickMillis, int slotCount)
+    {
+        this.tickMillis = tickMillis;
+        for (int i = 0; i < slotCount; i++)
+        {
+            slots.add(new ArrayList<>());
+        }
+    }
+
+    /**
+     * Schedules a task to run once the delay elapsed, within one tick after it
+     */
+    public Timeout schedule(Runnable task, long delayMillis)
+    {
+        long elapsed = System.currentTimeMillis() - started;
+        Timeout timeout = new Timeout(task, (elapsed + Math.max(0, delayMillis) + tickMillis - 1) / tickMillis);
+        added.add(timeout);
+        return timeout;
+    }
+
+    /**
+     * Runs the timeouts that expired up to now
+     */
+    public void advance()
+    {
+        Timeout timeout;
+        while ((timeout = added.poll()) != null)
+        {
+            // a timeout that is already due goes in the slot of the next tick
+            long deadline = Math.max(timeout.deadline, tick);
+            slots.get((int) (deadline % slots.size())).add(timeout);
+        }
+
+        long now = (System.currentTimeMillis() - started) / tickMillis;
+        for (; tick <= now; tick++)
+        {
+            Iterator<Timeout> iterator = slots.get((int) (tick % slots.size())).iterator();
+            while (iterator.hasNext())
+            {
+                Timeout next = iterator.next();
+                if (next.cancelled)
+                {
+                    iterator.remove();
+                }
+                else if (next.deadline <= tick)
+                {
+                    iterator.remove();
+                    next.task.run();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,166 @@
+/* This file is part of the cvc-webservices.
+ *  Copyright (c) 2018 by the Board of Trustees of the University of Iowa
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you
+ *  may not use this file except in compliance with the License.  You
+ *  may obtain a copy of the License at
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package cvc;
+
+import cvc.Contracts.Usage;
+import cvc.Contracts.UsageAggregate;
+import cvc.Contracts.UsageReport;
+
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.DoubleAccumulator;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The resource usage of the jobs that ran under runlim, aggregated per input language and
+ * per kind of the examples, to tune solverSlots, the timeouts and the space limit from real numbers.
+ */
+
+public class UsageStatistics
+{
+    private static final String NONE = "none";
+
+    private static class Aggregate
+    {
+        final LongAdder jobs = new LongAdder();
+        final DoubleAdder realTime = new DoubleAdder();
+        final DoubleAccumulator maxRealTime = new DoubleAccumulator(Math::max, 0);
+        final DoubleAdder cpuTime = new DoubleAdder();
+        final DoubleAccumulator maxCpuTime = new DoubleAccumulator(Math::max, 0);
+        final DoubleAdder memory = new DoubleAdder();
+        final DoubleAccumulator maxMemory = new DoubleAccumulator(Math::max, 0);
+        final LongAdder timeLimitHits = new LongAdder();
+        final LongAdder realTimeLimitHits = new LongAdder();
+        final LongAdder spaceLimitHits = new LongAdder();
+
+        void add(Usage usage)
+        {
+            jobs.increment();
+            if (usage.realTime != null)
+            {
+                realTime.add(usage.realTime);
+                maxRealTime.accumulate(usage.realTime);
+            }
+            if (usage.cpuTime != null)
+            {
+                cpuTime.add(usage.cpuTime);
+                maxCpuTime.accumulate(usage.cpuTime);
+            }
+            if (usage.maxMemory != null)
+            {
+                memory.add(usage.maxMemory);
+                maxMemory.accumulate(usage.maxMemory);
+            }
+            if (Usage.TIME_LIMIT.equals(usage.limit))
+            {
+                timeLimitHits.increment();
+            }
+            else if (Usage.REAL_TIME_LIMIT.equals(usage.limit))
+            {
+                realTimeLimitHits.increment();
+            }
+            else if (Usage.SPACE_LIMIT.equals(usage.limit))
+            {
+                spaceLimitHits.increment();
+            }
+        }
+
+        UsageAggregate toContract(String name)
+        {
+            UsageAggregate aggregate = new UsageAggregate();
+            aggregate.name = name;
+            aggregate.jobs = jobs.sum();
+            long count = Math.max(1, aggregate.jobs);
+            aggregate.averageRealTime = realTime.sum() / count;
+            aggregate.maxRealTime = maxRealTime.get();
+            aggregate.averageCpuTime = cpuTime.sum() / count;
+            aggregate.maxCpuTime = maxCpuTime.get();
+            aggregate.averageMemory = memory.sum() / count;
+            aggregate.maxMemory = maxMemory.get();
+            aggregate.timeLimitHits = timeLimitHits.sum();
+            aggregate.realTimeLimitHits = realTimeLimitHits.sum();
+            aggregate.spaceLimitHits = spaceLimitHits.sum();
+            return aggregate;
+        }
+    }
+
+    private static final ConcurrentMap<String, Aggregate> languages = new ConcurrentHashMap<>();
+    private static final ConcurrentMap<String, Aggregate> kinds = new ConcurrentHashMap<>();
+
+    /**
+     * Adds the usage of a finished job
+     *
+     * @param args the cvc options of the job
+     */
+    public static void record(List<String> args, Usage usage)
+    {
+        String lang = getLanguage(args);
+        languages.computeIfAbsent(lang, key -> new Aggregate()).add(usage);
+        kinds.computeIfAbsent(getKind(lang), key -> new Aggregate()).add(usage);
+    }
+
+    /**
+     * @return the value of the --lang option, or "none" if it is not given
+     */
+    private static String getLanguage(List<String> args)
+    {
+        int index = args.indexOf("--lang");
+        return index >= 0 && index + 1 < args.size() ? args.get(index + 1) : NONE;
+    }
+
+    /**
+     * @return the kind of the examples written in the language
+     */
+    private static String getKind(String lang)
+    {
+        if (lang.startsWith("smtlib"))
+        {
+            return "smt-lib";
+        }
+        switch (lang)
+        {
+            case "cvc4":
+                return "cvc";
+            case "sygus":
+            case "tptp":
+                return lang;
+            default:
+                return NONE;
+        }
+    }
+
+    public static UsageReport getReport()
+    {
+        UsageReport report = new UsageReport();
+        report.languages = toContracts(languages);
+        report.kinds = toContracts(kinds);
+        return report;
+    }
+
+    private static UsageAggregate[] toContracts(Map<String, Aggregate> aggregates)
+    {
+        // sorted by name, so that reports are easy to compare
+        Map<String, Aggregate> sorted = new TreeMap<>(aggregates);
+        UsageAggregate[] contracts = new UsageAggregate[sorted.size()];
+        int i = 0;
+        for (Map.Entry<String, Aggregate> entry : sorted.entrySet())
+        {
+            contracts[i++] = entry.getValue().toContract(entry.getKey());
+        }
+        return contracts;
+    }
+}
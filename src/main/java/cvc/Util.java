@@ -16,13 +16,20 @@ package cvc;
  * This class contains some generic utility functions.
  */
 
-import org.apache.commons.io.FileUtils;
+import com.fasterxml.jackson.databind.AnnotationIntrospector;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.introspect.JacksonAnnotationIntrospector;
+import com.fasterxml.jackson.module.jaxb.JaxbAnnotationIntrospector;
 import org.apache.log4j.Logger;
 
 import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileWriter;
-import java.util.Calendar;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
 import java.util.Collection;
 
 
@@ -30,49 +37,10 @@ public class Util
 {
     private static final Logger log = Logger.getLogger(Util.class);
 
-    /**
-     * Deletes all files in the given directory that are as old as, or older than the specified number of days
-     *
-     * @param directory The directory to clear old files out of (non-recursive)
-     * @param daysAgo   Files older than this many days ago will be deleted
-     *                  Function originally designed for the StarExec project
-     */
-    public static void clearOldFiles(String directory, int daysAgo)
-    {
-        try
-        {
-            File dir = new File(directory);
-
-            if (!dir.exists())
-            {
-                return;
-            }
-
-            // Subtract days from the current time
-            Calendar calendar = Calendar.getInstance();
-            calendar.add(Calendar.DATE, -daysAgo);
-
-
-            // Remove them all
-            for (File file : dir.listFiles())
-            {
-                if (!file.getName().startsWith(Constants.tempPrefix))
-                {
-                    continue; //don't delete permanent files
-                }
-                if (file.lastModified() < calendar.getTimeInMillis())
-                {
-                    System.out.println(file.getAbsolutePath());
-                    FileUtils.deleteQuietly(file);
-                }
-            }
-
-        }
-        catch (Exception e)
-        {
-            //log.warn(e.getMessage(), e);
-        }
-    }
+    // serializes like the JSON provider of Jersey, which honors both Jackson and JAXB annotations
+    public static final ObjectMapper jsonMapper = new ObjectMapper().setAnnotationIntrospector(
+            AnnotationIntrospector.pair(new JacksonAnnotationIntrospector(),
+                    new JaxbAnnotationIntrospector(new ObjectMapper().getTypeFactory())));
 
     /**
      * Checks if the given string is contained in the given array,
@@ -142,6 +110,57 @@ public class Util
         return false;
     }
 
+    /**
+     * Reads part of a file without touching the bytes before the given offset
+     *
+     * @param file      the file to read
+     * @param offset    the position of the first byte to read
+     * @param maxLength the maximum number of bytes to read
+     * @return the bytes read, which is empty if the file does not exist or ends before offset
+     */
+    public static byte[] readFromOffset(File file, long offset, int maxLength) throws IOException
+    {
+        if (!file.exists())
+        {
+            return new byte[0];
+        }
+
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ))
+        {
+            long available = channel.size() - offset;
+            if (available <= 0)
+            {
+                return new byte[0];
+            }
+
+            ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(available, maxLength));
+            while (buffer.hasRemaining())
+            {
+                int read = channel.read(buffer, offset + buffer.position());
+                if (read < 0)
+                {
+                    break;
+                }
+            }
+            return Arrays.copyOf(buffer.array(), buffer.position());
+        }
+    }
+
+    /**
+     * @return the index of the last occurrence of the byte, or -1 if it does not occur
+     */
+    public static int lastIndexOf(byte[] bytes, byte b)
+    {
+        for (int i = bytes.length - 1; i >= 0; i--)
+        {
+            if (bytes[i] == b)
+            {
+                return i;
+            }
+        }
+        return -1;
+    }
+
     /**
      * Checks to see if a string is null or empty
      *
@@ -17,25 +17,38 @@ package cvc;
  * This class is responsible for validating incoming job creation requests.
  */
 
-import java.util.List;
-
 
 public class Validator {
 
 	/**
-	 * Determines whether the given string represents a valid integer
+	 * Determines whether the given string represents a valid integer, without throwing
+	 * and catching an exception for invalid values
 	 * @param str The string to check
 	 * @return True if valid, false otherwise.
 	 * @author Eric Burns
 	 */
 	
 	public static boolean isValidPosInteger(String str) {
-		try {
-			Integer.parseInt(str);
-			return true;
-		} catch (Exception e) {
+		if (str == null || str.isEmpty()) {
+			return false;
+		}
+		boolean negative = str.charAt(0) == '-';
+		int i = (negative || str.charAt(0) == '+') ? 1 : 0;
+		if (i == str.length()) {
 			return false;
 		}
+		long value = 0;
+		for (; i < str.length(); i++) {
+			char c = str.charAt(i);
+			if (c < '0' || c > '9') {
+				return false;
+			}
+			value = value * 10 + (c - '0');
+			if (value > (long) Integer.MAX_VALUE + 1) {
+				return false;
+			}
+		}
+		return negative || value <= Integer.MAX_VALUE;
 	}
 	
 	/**
@@ -45,29 +58,60 @@ public class Validator {
 	 */
 	
 	public static boolean isValidBoolean(String str) {
-		str=str.toLowerCase();
-		return (str.equals("true") || str.equals("false"));
+		return str.equalsIgnoreCase("true") || str.equalsIgnoreCase("false");
 	}
 	/**
-	 * Determines whether the given string is a valid double.
+	 * Determines whether the given string is a valid decimal number, e.g. -1.5 or 2e-3,
+	 * without throwing and catching an exception for invalid values
 	 * @param dbl
 	 * @return True if it is a valid double, false otherwise
 	 */
 	
 	public static boolean isValidDouble(String dbl) {
-		try {
-			Double.parseDouble(dbl);
-			return true;
-		} catch (Exception e) {
+		if (dbl == null) {
+			return false;
+		}
+		int i = 0;
+		int length = dbl.length();
+		if (i < length && (dbl.charAt(i) == '-' || dbl.charAt(i) == '+')) {
+			i++;
+		}
+		int digits = 0;
+		while (i < length && dbl.charAt(i) >= '0' && dbl.charAt(i) <= '9') {
+			i++;
+			digits++;
+		}
+		if (i < length && dbl.charAt(i) == '.') {
+			i++;
+			while (i < length && dbl.charAt(i) >= '0' && dbl.charAt(i) <= '9') {
+				i++;
+				digits++;
+			}
+		}
+		if (digits == 0) {
 			return false;
 		}
-		
+		if (i < length && (dbl.charAt(i) == 'e' || dbl.charAt(i) == 'E')) {
+			i++;
+			if (i < length && (dbl.charAt(i) == '-' || dbl.charAt(i) == '+')) {
+				i++;
+			}
+			int exponentDigits = 0;
+			while (i < length && dbl.charAt(i) >= '0' && dbl.charAt(i) <= '9') {
+				i++;
+				exponentDigits++;
+			}
+			if (exponentDigits == 0) {
+				return false;
+			}
+		}
+		return i == length;
 	}
 	
 	
 	/**
 	 * Checks to see if the value of an argument is valid given the constraints specified
-	 * in config.xml. Both the type and value given must match what is given in CvcArguments.json
+	 * in CvcArguments.json, which are compiled into the {@link ArgumentSchema}
 	 * @param name The name of the parameter
 	 * @param value The given argument
 	 * @return True if valid, false otherwise
@@ -75,69 +119,6 @@ public class Validator {
 	
 	public static boolean isArgValid(String name, String value)
 	{
-		// invalid argument
-		if(! CvcContext.cvcArguments.containsKey(name))
-		{
-			return false;
-		}
-
-		// get the argument
-		Argument argument = CvcContext.cvcArguments.get(name);
-
-		// flag argument
-		if(argument.type == null)
-		{
-			return true;
-		}
-
-		String type= argument.type;
-
-		if (type.equals("int"))
-		{
-			if (!isValidPosInteger(value))
-			{
-				// the value of an int type must actually be an int
-				return false;
-			}
-		}
-		else if (type.equals("boolean"))
-		{
-			if (!isValidBoolean(value))
-			{
-				// must be a bool if that is what the type says
-				return false;
-			}
-		}
-		else if (type.equals("float"))
-		{
-			if (!isValidDouble(value))
-			{
-				//must be a valid double
-				return false;
-			}
-		}
-		else if (type.equals("string"))
-		{
-			//if we have a dropdown type, make sure that the value sent by the user is actually a real option
-			if (Util.containsIgnoreCase(argument.allowedValues,value))
-			{
-				return true;
-			}
-			else
-			{
-				return false;
-			}
-		}
-
-		// if we have a numeric type, we need to see if the given value conforms to limits min and max
-		if (type.equals("int") || type.equals("float"))
-		{
-			float val = Float.parseFloat(value);
-			if (val < argument.min || val > argument.max)
-			{
-				return false;
-			}
-		}
-		return true;
+		return CvcContext.getArgumentSchema().isValid(name, value);
 	}
 }
@@ -0,0 +1,482 @@
+/* This file is part of the cvc-webservices.
+ *  Copyright (c) 2018 by the Board of Trustees of the University of Iowa
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you
+ *  may not use this file except in compliance with the License.  You
+ *  may obtain a copy of the License at
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package cvc;
+
+import org.apache.log4j.Logger;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A pool of cvc processes started ahead of time in interactive mode, which saves the
+ * process startup for small SMT-LIB jobs.
+ * A job's script is written to the standard input of an idle process followed by an echo
+ * command, and the output up to the echoed marker is the output of the job. The marker is
+ * echoed to stderr as well, and the errors up to it are the errors of the job, so no error
+ * of a job is written to the errors of the next one. The process is then reset with (reset) and returned to the pool, or replaced after maxUses jobs, when it
+ * exits or when it is killed because the job timed out or was cancelled.
+ * Only jobs whose sole argument is the input language of the pool command are run in the
+ * pool, because any other option or language would change how the job is solved. Scripts
+ * that need incremental mode, i.e. with more than one check-sat or with push or pop, run
+ * in a process of their own, so that the pool command does not need --incremental, which
+ * changes how cvc solves the other jobs.
+ * Pooled processes do not run under runlim, so the soft timeout is enforced by the pool
+ * command (e.g. --tlimit-per) and the hard timeout by the pool itself. No space limit applies
+ * to them, so the pool command should be given one, e.g. by running it under ulimit. A job whose process
+ * is killed at the hard timeout or because it was cancelled finishes as TIMED_OUT or CANCELLED.
+ * A job runs on a thread of the pool, one per process, so the thread that started the job
+ * does not wait for it.
+ */
+
+public class WarmSolverPool
+{
+    private static final Logger log = Logger.getLogger(WarmSolverPool.class);
+
+    private static final String LANG_OPTION = "--lang";
+
+    private static final Pattern CHECK_SAT = Pattern.compile("\\(\\s*check-sat\\s*\\)");
+    private static final Pattern INCREMENTAL_COMMAND = Pattern.compile(
+            "\\(\\s*(push|pop|check-sat-assuming|reset-assertions)\\b");
+    // would move the markers that end the output of a job
+    private static final Pattern OUTPUT_CHANNEL = Pattern.compile(":(regular|diagnostic)-output-channel\\b");
+
+    // how long a job waits for an idle process before it runs in a new process instead
+    private static final long ACQUIRE_TIMEOUT = 100; // milliseconds
+
+    // how long the marker on stderr may follow the marker on stdout
+    private static final long ERRORS_TIMEOUT = 1000; // milliseconds
+
+    // how often a running job is checked for its timeout and cancellation
+    private static final long WATCH_PERIOD = 200; // milliseconds
+
+    /**
+     * How a job ran in the pool
+     */
+    public enum Outcome
+    {
+        CACHEABLE(JobRegistry.State.COMPLETED), // completed within the soft timeout
+        NOT_CACHEABLE(JobRegistry.State.COMPLETED),
+        TIMED_OUT(JobRegistry.State.TIMED_OUT), // killed at the hard timeout
+        CANCELLED(JobRegistry.State.CANCELLED); // killed because the job was cancelled
+
+        private final JobRegistry.State state;
+
+        Outcome(JobRegistry.State state)
+        {
+            this.state = state;
+        }
+
+        /**
+         * @return the final state of the job
+         */
+        public JobRegistry.State getState()
+        {
+            return state;
+        }
+    }
+
+    private class WarmProcess
+    {
+        final Process process;
+        final BufferedReader output;
+        final Writer input;
+        int uses;
+
+        // guarded by this
+        private OutputStream errors; // of the current job, until the error pump reads its marker
+        private boolean fenced = true; // the error pump read the marker of the current job, or the process exited
+        private boolean exited; // the error pump read the end of stderr
+
+        WarmProcess() throws IOException
+        {
+            ProcessBuilder builder = new ProcessBuilder(command);
+            CvcContext.getProcessSupervisor().mark(builder, "warm-pool");
+            process = builder.start();
+            output = new BufferedReader(new InputStreamReader(process.getInputStream(), Charset.defaultCharset()));
+            input = new OutputStreamWriter(process.getOutputStream(), Charset.defaultCharset());
+
+            CvcContext.getOutputPumpService().execute(new RobustRunnable("warmProcessErrors")
+            {
+                @Override
+                protected void dorun()
+                {
+                    pumpErrors();
+                }
+            });
+        }
+
+        synchronized void beginJob(OutputStream errors)
+        {
+            this.errors = errors;
+            fenced = false;
+        }
+
+        /**
+         * Waits until the error pump read the marker of the current job, and detaches the
+         * errors of the job, so that no later error is written to them
+         *
+         * @return true if the marker was read, false if the process exited or the marker was not read in time
+         */
+        synchronized boolean endJob(long timeout) throws InterruptedException
+        {
+            long deadline = System.currentTimeMillis() + timeout;
+            while (!fenced && System.currentTimeMillis() < deadline)
+            {
+                wait(Math.max(1, deadline - System.currentTimeMillis()));
+            }
+            errors = null;
+            return fenced && !exited;
+        }
+
+        synchronized void detachErrors()
+        {
+            errors = null;
+        }
+
+        private void pumpErrors()
+        {
+            BufferedReader reader = new BufferedReader(
+                    new InputStreamReader(process.getErrorStream(), Charset.defaultCharset()));
+            try
+            {
+                String line;
+                while ((line = reader.readLine()) != null)
+                {
+                    if (isMarker(line))
+                    {
+                        fence(false);
+                    }
+                    else
+                    {
+                        writeError((line + "\n").getBytes(Charset.defaultCharset()));
+                    }
+                }
+            }
+            catch (IOException e)
+            {
+                // the process was destroyed
+            }
+            finally
+            {
+                fence(true);
+            }
+        }
+
+        private synchronized void writeError(byte[] bytes)
+        {
+            if (errors != null)
+            {
+                try
+                {
+                    errors.write(bytes);
+                }
+                catch (IOException e)
+                {
+                    log.debug("writing the errors of a warm process says " + e.getMessage());
+                }
+            }
+        }
+
+        private synchronized void fence(boolean exit)
+        {
+            exited |= exit;
+            errors = null;
+            fenced = true;
+            notifyAll();
+        }
+    }
+
+    private final List<String> command;
+    private final String language; // of the command, or null
+    private final int maxUses;
+    private final String marker = "cvc-webservices-" + UUID.randomUUID();
+    private final LinkedBlockingQueue<WarmProcess> idle = new LinkedBlockingQueue<>();
+    private final ExecutorService runners;
+
+    /**
+     * @param command the command that starts cvc in interactive mode with an input language
+     * @param size    the number of processes
+     * @param maxUses the number of jobs after which a process is replaced
+     */
+    public WarmSolverPool(String command, int size, int maxUses)
+    {
+        this.command = Arrays.asList(command.split(" "));
+        this.language = getLanguage(this.command);
+        this.maxUses = maxUses;
+        this.runners = Executors.newFixedThreadPool(Math.max(1, size));
+        if (language == null)
+        {
+            log.warn("the warm pool command sets no " + LANG_OPTION + ", so no job runs in the pool");
+        }
+
+        for (int i = 0; i < size; i++)
+        {
+            replace(null);
+        }
+    }
+
+    /**
+     * @return the input language set by a command, e.g. smt2.6 for --lang=smtlib2.6, or null
+     */
+    private static String getLanguage(List<String> command)
+    {
+        for (int i = 0; i < command.size(); i++)
+        {
+            String option = command.get(i);
+            if (option.startsWith(LANG_OPTION + "="))
+            {
+                return normalize(option.substring(LANG_OPTION.length() + 1));
+            }
+            if (option.equals(LANG_OPTION) && i + 1 < command.size())
+            {
+                return normalize(command.get(i + 1));
+            }
+        }
+        return null;
+    }
+
+    // cvc accepts smt2.6 and smtlib2.6 for the same language
+    private static String normalize(String language)
+    {
+        return language.replace("smtlib", "smt");
+    }
+
+    /**
+     * @param args the normalized cvc arguments of a job
+     * @param code the script of the job
+     * @return true if the job can run in a shared process
+     */
+    public boolean accepts(List<String> args, String code)
+    {
+        if (language == null || args.size() != 2 || !args.get(0).equals(LANG_OPTION) ||
+                !normalize(args.get(1)).equals(language))
+        {
+            return false;
+        }
+        if (INCREMENTAL_COMMAND.matcher(code).find() || OUTPUT_CHANNEL.matcher(code).find())
+        {
+            return false;
+        }
+        Matcher checkSat = CHECK_SAT.matcher(code);
+        return !(checkSat.find() && checkSat.find());
+    }
+
+    /**
+     * Starts a job in an idle process, and returns without waiting for the job
+     *
+     * @param jobId    the id of the job
+     * @param code     the SMT-LIB script of the job
+     * @param results  receives the standard output
+     * @param errors   receives the standard error
+     * @param finished called with how the job ran once its output is copied
+     * @return false if no process was idle, in which case the job did not start
+     */
+    public boolean start(String jobId, String code, OutputStream results, OutputStream errors,
+                         Consumer<Outcome> finished) throws InterruptedException
+    {
+        WarmProcess warmProcess = idle.poll(ACQUIRE_TIMEOUT, TimeUnit.MILLISECONDS);
+        if (warmProcess == null)
+        {
+            return false;
+        }
+
+        try
+        {
+            runners.execute(new RobustRunnable("warmPoolJob")
+            {
+                @Override
+                protected void dorun()
+                {
+                    Outcome outcome = Outcome.NOT_CACHEABLE;
+                    try
+                    {
+                        outcome = runJob(jobId, warmProcess, code, results, errors);
+                    }
+                    finally
+                    {
+                        finished.accept(outcome);
+                    }
+                }
+            });
+        }
+        catch (RejectedExecutionException e)
+        {
+            // the pool was shut down
+            warmProcess.process.destroyForcibly();
+            throw e;
+        }
+        return true;
+    }
+
+    private Outcome runJob(String jobId, WarmProcess warmProcess, String code, OutputStream results, OutputStream errors)
+    {
+        long started = System.currentTimeMillis();
+        // why the watch killed the process, or null
+        AtomicReference<Outcome> killed = new AtomicReference<>();
+        ScheduledFuture<?> watch = CvcContext.getTaskScheduler().scheduleAtFixedRate(() ->
+        {
+            Future<Void> task = CvcContext.runningTasks.get(jobId);
+            Outcome reason = task == null || task.isCancelled() ? Outcome.CANCELLED :
+                    System.currentTimeMillis() - started > CvcContext.hardTimeout ? Outcome.TIMED_OUT : null;
+            if (reason != null && killed.compareAndSet(null, reason))
+            {
+                // reading the output returns once the process is gone
+                warmProcess.process.destroyForcibly();
+            }
+        }, WATCH_PERIOD, WATCH_PERIOD, TimeUnit.MILLISECONDS);
+
+        boolean completed = false;
+        boolean reusable = false;
+        try
+        {
+            warmProcess.beginJob(errors);
+            warmProcess.uses++;
+
+            warmProcess.input.write(code);
+            warmProcess.input.write("\n(echo \"" + marker + "\")\n");
+            // echo writes to the regular output channel, so the marker is echoed to stderr too
+            warmProcess.input.write("(set-option :regular-output-channel \"stderr\")\n");
+            warmProcess.input.write("(echo \"" + marker + "\")\n");
+            warmProcess.input.write("(set-option :regular-output-channel \"stdout\")\n");
+            warmProcess.input.flush();
+
+            completed = copyOutput(jobId, warmProcess, results);
+            // the errors of the job end at the marker on stderr, which follows the marker on stdout
+            reusable = completed && warmProcess.endJob(ERRORS_TIMEOUT);
+            if (reusable)
+            {
+                warmProcess.input.write("(reset)\n");
+                warmProcess.input.flush();
+            }
+        }
+        catch (IOException e)
+        {
+            // the process exited, e.g. the script called (exit), or it was destroyed
+            log.debug("warm process of job " + jobId + " says " + e.getMessage());
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+        finally
+        {
+            watch.cancel(false);
+            // a process whose errors were not fenced is not reused, so its later errors go nowhere
+            warmProcess.detachErrors();
+
+            if (reusable && warmProcess.uses < maxUses && warmProcess.process.isAlive())
+            {
+                idle.add(warmProcess);
+            }
+            else
+            {
+                replace(warmProcess);
+            }
+        }
+
+        if (!completed && killed.get() != null)
+        {
+            return killed.get();
+        }
+        long runtime = System.currentTimeMillis() - started;
+        // the results are cached by the job once its outputs are closed
+        return reusable && runtime < Long.parseLong(CvcContext.softTimeout) ? Outcome.CACHEABLE : Outcome.NOT_CACHEABLE;
+    }
+
+    /**
+     * Copies the output of the current job up to the marker.
+     * In batch mode cvc stops at the first error, so the output that follows an error is dropped.
+     *
+     * @return true if the marker was read, false if the process exited first
+     */
+    private boolean copyOutput(String jobId, WarmProcess warmProcess, OutputStream results) throws IOException
+    {
+        boolean failed = false;
+        String line;
+        while ((line = warmProcess.output.readLine()) != null)
+        {
+            if (isMarker(line))
+            {
+                return true;
+            }
+            String trimmed = line.trim();
+
+            if (!failed)
+            {
+                byte[] bytes = (line + "\n").getBytes(Charset.defaultCharset());
+                results.write(bytes);
+                Metrics.outputBytes.add(bytes.length);
+                OutputStreamer.notifyOutput(jobId);
+                failed = trimmed.startsWith("(error");
+            }
+        }
+        return false;
+    }
+
+    private boolean isMarker(String line)
+    {
+        String trimmed = line.trim();
+        return trimmed.equals(marker) || trimmed.equals("\"" + marker + "\"");
+    }
+
+    /**
+     * Destroys a process and starts a new one in its place
+     */
+    private void replace(WarmProcess warmProcess)
+    {
+        if (warmProcess != null)
+        {
+            warmProcess.process.destroyForcibly();
+        }
+
+        try
+        {
+            idle.add(new WarmProcess());
+        }
+        catch (IOException e)
+        {
+            log.error("starting a warm process says " + e.getMessage(), e);
+        }
+    }
+
+    public void shutdown()
+    {
+        runners.shutdown();
+        List<WarmProcess> processes = new ArrayList<>();
+        idle.drainTo(processes);
+        for (WarmProcess warmProcess : processes)
+        {
+            warmProcess.process.destroyForcibly();
+        }
+    }
+}
@@ -0,0 +1,264 @@
+/* This file is part of the cvc-webservices.
+ *  Copyright (c) 2018 by the Board of Trustees of the University of Iowa
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you
+ *  may not use this file except in compliance with the License.  You
+ *  may obtain a copy of the License at
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package cvc;
+
+import cvc.Contracts.RawResults;
+import org.apache.commons.io.FileUtils;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.CompletionCallback;
+import javax.ws.rs.container.TimeoutHandler;
+import javax.ws.rs.core.Response;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests /awaitResult against a stub {@link AsyncResponse}, without a servlet container
+ */
+public class AwaitResultTest
+{
+    private static File jobsDirectory;
+
+    /**
+     * Records how the request was resumed, and calls the completion callbacks like Jersey does
+     */
+    private static class StubResponse implements AsyncResponse
+    {
+        final CompletableFuture<Object> resumed = new CompletableFuture<>();
+        final AtomicInteger resumes = new AtomicInteger();
+        final List<CompletionCallback> callbacks = new ArrayList<>();
+        TimeoutHandler timeoutHandler;
+        long timeout;
+
+        @Override
+        public synchronized boolean resume(Object response)
+        {
+            resumes.incrementAndGet();
+            if (resumed.isDone())
+            {
+                return false;
+            }
+            resumed.complete(response);
+            for (CompletionCallback callback : callbacks)
+            {
+                callback.onComplete(null);
+            }
+            return true;
+        }
+
+        @Override
+        public boolean resume(Throwable response)
+        {
+            return resume((Object) response);
+        }
+
+        @Override
+        public boolean cancel()
+        {
+            return false;
+        }
+
+        @Override
+        public boolean cancel(int retryAfter)
+        {
+            return false;
+        }
+
+        @Override
+        public boolean cancel(Date retryAfter)
+        {
+            return false;
+        }
+
+        @Override
+        public boolean isSuspended()
+        {
+            return !resumed.isDone();
+        }
+
+        @Override
+        public boolean isCancelled()
+        {
+            return false;
+        }
+
+        @Override
+        public boolean isDone()
+        {
+            return resumed.isDone();
+        }
+
+        @Override
+        public boolean setTimeout(long time, TimeUnit unit)
+        {
+            timeout = unit.toSeconds(time);
+            return true;
+        }
+
+        @Override
+        public void setTimeoutHandler(TimeoutHandler handler)
+        {
+            timeoutHandler = handler;
+        }
+
+        @Override
+        public Collection<Class<?>> register(Class<?> callback)
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Map<Class<?>, Collection<Class<?>>> register(Class<?> callback, Class<?>... callbacks)
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Collection<Class<?>> register(Object callback)
+        {
+            callbacks.add((CompletionCallback) callback);
+            return Collections.singletonList(CompletionCallback.class);
+        }
+
+        @Override
+        public Map<Class<?>, Collection<Class<?>>> register(Object callback, Object... callbacks)
+        {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    @BeforeAll
+    public static void createJobStore() throws IOException
+    {
+        jobsDirectory = Files.createTempDirectory("cvc-jobs").toFile();
+        CvcContext.setJobStore(new FileJobStore(jobsDirectory.getAbsolutePath(), 0, 0));
+        CvcContext.maxAwaitSeconds = 60;
+    }
+
+    @AfterAll
+    public static void deleteJobStore()
+    {
+        FileUtils.deleteQuietly(jobsDirectory);
+    }
+
+    private static String createJob(String results) throws IOException
+    {
+        String jobId = Constants.tempPrefix + UUID.randomUUID().toString();
+        JobRegistry.register(jobId);
+        CvcContext.getJobStore().create(jobId, "(check-sat)");
+        try (OutputStream output = CvcContext.getJobStore().openOutput(jobId, Constants.RESULTS_FILE))
+        {
+            output.write(results.getBytes(Charset.defaultCharset()));
+        }
+        return jobId;
+    }
+
+    private static void finish(String jobId)
+    {
+        JobRegistry.finished(jobId, JobRegistry.State.COMPLETED, 0);
+        JobCompletion.notifyListeners(jobId);
+    }
+
+    @Test
+    public void resumesWhenTheJobFinishes() throws Exception
+    {
+        String jobId = createJob("sat\n");
+        StubResponse response = new StubResponse();
+        new RESTServices().awaitResult(jobId, 30, response);
+        assertFalse(response.isDone());
+        assertEquals(30, response.timeout);
+
+        finish(jobId);
+        RawResults results = (RawResults) response.resumed.get(10, TimeUnit.SECONDS);
+        assertEquals(jobId, results.jobId);
+        assertTrue(results.jobFinished);
+        assertEquals("sat\n", results.data);
+    }
+
+    @Test
+    public void resumesRightAwayIfTheJobFinished() throws Exception
+    {
+        String jobId = createJob("unsat\n");
+        finish(jobId);
+
+        StubResponse response = new StubResponse();
+        new RESTServices().awaitResult(jobId, 30, response);
+        RawResults results = (RawResults) response.resumed.get(10, TimeUnit.SECONDS);
+        assertTrue(results.jobFinished);
+        assertEquals("unsat\n", results.data);
+    }
+
+    @Test
+    public void timeout() throws Exception
+    {
+        String jobId = createJob("");
+        StubResponse response = new StubResponse();
+        new RESTServices().awaitResult(jobId, 5, response);
+
+        response.timeoutHandler.handleTimeout(response);
+        RawResults results = (RawResults) response.resumed.get(10, TimeUnit.SECONDS);
+        assertEquals(jobId, results.jobId);
+        assertFalse(results.jobFinished);
+
+        // the listener was removed when the response was sent
+        finish(jobId);
+        CvcContext.getStreamingService().submit(() -> null).get(10, TimeUnit.SECONDS);
+        assertEquals(1, response.resumes.get());
+    }
+
+    @Test
+    public void unknownJob() throws Exception
+    {
+        StubResponse response = new StubResponse();
+        new RESTServices().awaitResult("unknown-" + UUID.randomUUID(), 30, response);
+        Response result = (Response) response.resumed.get(10, TimeUnit.SECONDS);
+        assertEquals(Response.Status.NOT_FOUND.getStatusCode(), result.getStatus());
+    }
+
+    @Test
+    public void clampsTheTimeout()
+    {
+        String jobId = UUID.randomUUID().toString();
+        JobRegistry.register(jobId);
+
+        StubResponse never = new StubResponse();
+        new RESTServices().awaitResult(jobId, 0, never);
+        assertEquals(1, never.timeout);
+
+        StubResponse tooLong = new StubResponse();
+        new RESTServices().awaitResult(jobId, 3600, tooLong);
+        assertEquals(CvcContext.maxAwaitSeconds, tooLong.timeout);
+
+        finish(jobId);
+    }
+}
@@ -0,0 +1,130 @@
+/* This file is part of the cvc-webservices.
+ *  Copyright (c) 2018 by the Board of Trustees of the University of Iowa
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you
+ *  may not use this file except in compliance with the License.  You
+ *  may obtain a copy of the License at
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package cvc;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class OutputLimitTest
+{
+    private static byte[] bytes(String string)
+    {
+        return string.getBytes(Charset.defaultCharset());
+    }
+
+    private static String string(ByteArrayOutputStream out)
+    {
+        return new String(out.toByteArray(), Charset.defaultCharset());
+    }
+
+    private static String marker(long omitted)
+    {
+        return "\n" + OutputLimit.TRUNCATION_MARKER + omitted + " bytes omitted]\n";
+    }
+
+    @Test
+    public void withinTheLimit() throws IOException
+    {
+        OutputLimit limit = new OutputLimit(10, 4, null);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (OutputStream stream = limit.wrap(out))
+        {
+            stream.write(bytes("0123456789"));
+        }
+        assertEquals("0123456789", string(out));
+        assertFalse(limit.isExceeded());
+    }
+
+    @Test
+    public void keepsTheTail() throws IOException
+    {
+        AtomicInteger exceeded = new AtomicInteger();
+        OutputLimit limit = new OutputLimit(4, 3, exceeded::incrementAndGet);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (OutputStream stream = limit.wrap(out))
+        {
+            stream.write(bytes("0123456"));
+            stream.write(bytes("789"));
+        }
+        assertEquals("0123" + marker(3) + "789", string(out));
+        assertTrue(limit.isExceeded());
+        assertEquals(1, exceeded.get());
+    }
+
+    @Test
+    public void ringWrapsAround() throws IOException
+    {
+        OutputLimit limit = new OutputLimit(2, 4, null);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (OutputStream stream = limit.wrap(out))
+        {
+            stream.write(bytes("ab"));
+            // the writes beyond the limit wrap around the ring of 4 bytes several times
+            for (String chunk : new String[]{"cde", "f", "ghi", "jklmnopq", "r"})
+            {
+                stream.write(bytes(chunk));
+            }
+        }
+        assertEquals("ab" + marker(12) + "opqr", string(out));
+    }
+
+    @Test
+    public void shortTail() throws IOException
+    {
+        // fewer bytes beyond the limit than the tail holds
+        OutputLimit limit = new OutputLimit(3, 8, null);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (OutputStream stream = limit.wrap(out))
+        {
+            stream.write(bytes("abcde"));
+        }
+        assertEquals("abc" + marker(0) + "de", string(out));
+    }
+
+    @Test
+    public void noTail() throws IOException
+    {
+        OutputLimit limit = new OutputLimit(3, 0, null);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (OutputStream stream = limit.wrap(out))
+        {
+            stream.write(bytes("abcdef"));
+        }
+        assertEquals("abc" + marker(3), string(out));
+    }
+
+    @Test
+    public void sharedAcrossStreams() throws IOException
+    {
+        OutputLimit limit = new OutputLimit(5, 2, null);
+        ByteArrayOutputStream results = new ByteArrayOutputStream();
+        ByteArrayOutputStream errors = new ByteArrayOutputStream();
+        try (OutputStream resultStream = limit.wrap(results); OutputStream errorStream = limit.wrap(errors))
+        {
+            resultStream.write(bytes("abc"));
+            errorStream.write(bytes("xyz"));
+            resultStream.write(bytes("d"));
+        }
+        assertEquals("abc" + marker(0) + "d", string(results));
+        assertEquals("xy" + marker(0) + "z", string(errors));
+    }
+}
@@ -0,0 +1,123 @@
+/* This file is part of the cvc-webservices.
+ *  Copyright (c) 2018 by the Board of Trustees of the University of Iowa
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you
+ *  may not use this file except in compliance with the License.  You
+ *  may obtain a copy of the License at
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package cvc;
+
+import cvc.Contracts.Usage;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.Charset;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class RunlimLogTest
+{
+    private static final String LIMITS =
+            "[runlim] version:\t\t1.10\n" +
+            "[runlim] time limit:\t\t90 seconds\n" +
+            "[runlim] real time limit:\t90 seconds\n" +
+            "[runlim] space limit:\t\t50 MB\n" +
+            "[runlim] argv[0]:\t\t/usr/local/bin/cvc4\n" +
+            "[runlim] start:\t\t\tThu Oct 18 10:00:00 2018\n" +
+            "[runlim] main pid:\t\t1234\n";
+
+    private static Usage parse(String summary)
+    {
+        return RunlimLog.parse((LIMITS + summary).getBytes(Charset.defaultCharset())).toUsage();
+    }
+
+    private static String summary(String status, String result, String real, String time, String space)
+    {
+        return "[runlim] end:\t\t\tThu Oct 18 10:01:30 2018\n" +
+                "[runlim] status:\t\t" + status + "\n" +
+                "[runlim] result:\t\t" + result + "\n" +
+                "[runlim] children:\t\t0\n" +
+                "[runlim] real:\t\t\t" + real + " seconds\n" +
+                "[runlim] time:\t\t\t" + time + " seconds\n" +
+                "[runlim] space:\t\t\t" + space + " MB\n" +
+                "[runlim] samples:\t\t100\n";
+    }
+
+    @Test
+    public void ok()
+    {
+        RunlimLog log = RunlimLog.parse((LIMITS + summary("ok", "0", "0.02", "0.01", "3.4"))
+                .getBytes(Charset.defaultCharset()));
+        assertEquals("ok", log.status);
+        assertEquals(Integer.valueOf(0), log.result);
+        assertEquals(Double.valueOf(90), log.timeLimit);
+        assertEquals(Double.valueOf(90), log.realTimeLimit);
+        assertEquals(Double.valueOf(50), log.spaceLimit);
+
+        Usage usage = log.toUsage();
+        assertEquals("ok", usage.status);
+        assertEquals(Double.valueOf(0.02), usage.realTime);
+        assertEquals(Double.valueOf(0.01), usage.cpuTime);
+        assertEquals(Double.valueOf(3.4), usage.maxMemory);
+        assertNull(usage.limit);
+    }
+
+    @Test
+    public void outOfRealTime()
+    {
+        // cvc waited, e.g. for its input, so it used little cpu time
+        Usage usage = parse(summary("out of time", "1", "90.01", "2.50", "12.0"));
+        assertEquals("out of time", usage.status);
+        assertEquals(Usage.REAL_TIME_LIMIT, usage.limit);
+    }
+
+    @Test
+    public void outOfCpuTime()
+    {
+        Usage usage = parse(summary("out of time", "1", "90.20", "90.01", "12.0"));
+        assertEquals("out of time", usage.status);
+        assertEquals(Usage.TIME_LIMIT, usage.limit);
+    }
+
+    @Test
+    public void outOfMemory()
+    {
+        Usage usage = parse(summary("out of memory", "1", "3.10", "3.00", "50.1"));
+        assertEquals("out of memory", usage.status);
+        assertEquals(Usage.SPACE_LIMIT, usage.limit);
+        assertEquals(Double.valueOf(50.1), usage.maxMemory);
+    }
+
+    @Test
+    public void signal()
+    {
+        Usage usage = parse(summary("signal(9)", "137", "1.00", "0.90", "8.0"));
+        assertEquals("signal(9)", usage.status);
+        assertNull(usage.limit);
+    }
+
+    @Test
+    public void emptyLog()
+    {
+        RunlimLog log = RunlimLog.parse(new byte[0]);
+        assertNull(log.status);
+        assertNull(log.result);
+        assertNull(log.real);
+        assertNull(log.toUsage());
+    }
+
+    @Test
+    public void malformedNumbers()
+    {
+        RunlimLog log = RunlimLog.parse("[runlim] status:\tok\n[runlim] result:\tnone\n[runlim] real:\t\n"
+                .getBytes(Charset.defaultCharset()));
+        assertEquals("ok", log.status);
+        assertNull(log.result);
+        assertNull(log.real);
+    }
+}
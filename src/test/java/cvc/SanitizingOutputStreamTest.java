@@ -0,0 +1,86 @@
+/* This file is part of the cvc-webservices.
+ *  Copyright (c) 2018 by the Board of Trustees of the University of Iowa
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you
+ *  may not use this file except in compliance with the License.  You
+ *  may obtain a copy of the License at
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package cvc;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class SanitizingOutputStreamTest
+{
+    /**
+     * Writes the chunks through a stream that removes the pattern, and returns what came out
+     */
+    private static String sanitize(String pattern, String... chunks) throws IOException
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (OutputStream stream = new SanitizingOutputStream(out, pattern.getBytes(Charset.defaultCharset())))
+        {
+            for (String chunk : chunks)
+            {
+                stream.write(chunk.getBytes(Charset.defaultCharset()));
+            }
+        }
+        return new String(out.toByteArray(), Charset.defaultCharset());
+    }
+
+    @Test
+    public void removesOccurrences() throws IOException
+    {
+        assertEquals("error in /code.txt, /code.txt", sanitize("/tmp/job", "error in /tmp/job/code.txt, /tmp/job/code.txt"));
+    }
+
+    @Test
+    public void removesOccurrencesSplitBetweenWrites() throws IOException
+    {
+        assertEquals("a/code.txt b", sanitize("/tmp/job", "a/tm", "p/j", "ob/code.txt b"));
+        assertEquals("x/y", sanitize("/tmp/job", "x", "/", "t", "m", "p", "/", "j", "o", "b", "/y"));
+    }
+
+    @Test
+    public void releasesPartialMatches() throws IOException
+    {
+        // the held back prefix is released once a byte does not continue it
+        assertEquals("/tmp/jo!", sanitize("/tmp/job", "/tmp/", "jo!"));
+        // a failed match may start the next occurrence
+        assertEquals("aa", sanitize("aab", "aa", "aab"));
+        assertEquals("ab", sanitize("abab", "abab", "ab", "ab", "ab"));
+        // the held back prefix at the end is written when the stream is closed
+        assertEquals("x/tmp/jo", sanitize("/tmp/job", "x/tmp/", "jo"));
+    }
+
+    @Test
+    public void singleByteWrites() throws IOException
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (OutputStream stream = new SanitizingOutputStream(out, "ab".getBytes(Charset.defaultCharset())))
+        {
+            for (byte b : "aabcab".getBytes(Charset.defaultCharset()))
+            {
+                stream.write(b);
+            }
+        }
+        assertEquals("ac", new String(out.toByteArray(), Charset.defaultCharset()));
+    }
+
+    @Test
+    public void emptyPattern() throws IOException
+    {
+        assertEquals("unchanged", sanitize("", "unch", "anged"));
+    }
+}
@@ -0,0 +1,73 @@
+/* This file is part of the cvc-webservices.
+ *  Copyright (c) 2018 by the Board of Trustees of the University of Iowa
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you
+ *  may not use this file except in compliance with the License.  You
+ *  may obtain a copy of the License at
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package cvc;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ValidatorTest
+{
+    @Test
+    public void integers()
+    {
+        assertTrue(Validator.isValidPosInteger("0"));
+        assertTrue(Validator.isValidPosInteger("42"));
+        assertTrue(Validator.isValidPosInteger("+42"));
+        assertTrue(Validator.isValidPosInteger("2147483647"));
+        // accepts what Integer.parseInt accepts
+        assertTrue(Validator.isValidPosInteger("-2147483648"));
+
+        assertFalse(Validator.isValidPosInteger(null));
+        assertFalse(Validator.isValidPosInteger(""));
+        assertFalse(Validator.isValidPosInteger("-"));
+        assertFalse(Validator.isValidPosInteger("+"));
+        assertFalse(Validator.isValidPosInteger("12a"));
+        assertFalse(Validator.isValidPosInteger("1.0"));
+        assertFalse(Validator.isValidPosInteger(" 1"));
+        assertFalse(Validator.isValidPosInteger("2147483648"));
+        assertFalse(Validator.isValidPosInteger("-2147483649"));
+        assertFalse(Validator.isValidPosInteger("99999999999999999999"));
+    }
+
+    @Test
+    public void doubles()
+    {
+        assertTrue(Validator.isValidDouble("0"));
+        assertTrue(Validator.isValidDouble("-1.5"));
+        assertTrue(Validator.isValidDouble("+.5"));
+        assertTrue(Validator.isValidDouble("5."));
+        assertTrue(Validator.isValidDouble("2e-3"));
+        assertTrue(Validator.isValidDouble("1.5E+10"));
+
+        assertFalse(Validator.isValidDouble(null));
+        assertFalse(Validator.isValidDouble(""));
+        assertFalse(Validator.isValidDouble("."));
+        assertFalse(Validator.isValidDouble("-"));
+        assertFalse(Validator.isValidDouble("e5"));
+        assertFalse(Validator.isValidDouble("1e"));
+        assertFalse(Validator.isValidDouble("1e+"));
+        assertFalse(Validator.isValidDouble("1.2.3"));
+        assertFalse(Validator.isValidDouble("NaN"));
+        assertFalse(Validator.isValidDouble("1 "));
+    }
+
+    @Test
+    public void booleans()
+    {
+        assertTrue(Validator.isValidBoolean("true"));
+        assertTrue(Validator.isValidBoolean("FALSE"));
+        assertFalse(Validator.isValidBoolean("yes"));
+    }
+}